@@ -0,0 +1,132 @@
+package dev.allanbrunner.addressFormatter.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dev.allanbrunner.addressFormatter.address.UnstructuredAddress;
+
+/**
+ * Deterministic generator of Swiss-looking unstructured addresses, grouped by the shapes format() distinguishes.
+ */
+public final class AddressCorpus {
+	public enum Shape {
+		STREET, PO_BOX, TITLED, ZIP_SUFFIX, FOREIGN
+	}
+
+	private static final String[] TITLES = { "Herr", "Frau", "Monsieur", "Madame", "M", "Mme", "Mr", "Ms" };
+	private static final String[] LASTNAMES = { "Muller", "Meier", "Schmid", "Keller", "Weber", "Huber", "Schneider",
+			"Meyer", "Steiner", "Fischer", "Gerber", "Brunner", "Baumann", "Frei", "Zimmermann", "Moser", "Rochat",
+			"Favre", "Bonvin", "Rossi", "Bianchi", "Dubois" };
+	private static final String[] FIRSTNAMES = { "Hans", "Peter", "Daniel", "Thomas", "Martin", "Maria", "Anna",
+			"Ursula", "Ruth", "Sandra", "Jean", "Pierre", "Nicolas", "Marie", "Sophie", "Luca", "Giulia", "Marco" };
+	private static final String[] STREETS = { "Bahnhofstrasse", "Hauptstrasse", "Dorfstrasse", "Kirchweg",
+			"Rue de la Gare", "Avenue de la Gare", "Chemin des Vignes", "Route de Lausanne", "Via Cantonale",
+			"Seestrasse", "Industriestrasse", "Rue du Lac", "Schulhausstrasse", "Bergstrasse" };
+	private static final String[] NUMBER_SUFFIXES = { "", "", "", "", "a", "b", "c", "bis", "ter" };
+	private static final String[] PO_BOXES = { "Postfach", "Case Postale", "Casella Postale", "CP", "P.O. Box" };
+	private static final String[][] LOCALITIES = { { "8001", "Zurich" }, { "3011", "Bern" },
+			{ "1003", "Lausanne" }, { "1201", "Geneve" }, { "4051", "Basel" }, { "6900", "Lugano" }, { "1950", "Sion" },
+			{ "2000", "Neuchatel" }, { "6003", "Luzern" }, { "9000", "St. Gallen" }, { "1700", "Fribourg" }, { "8400", "Winterthur" } };
+	private static final String[][] FOREIGN = { { "75008", "Paris", "FR" }, { "10115", "Berlin", "DE" },
+			{ "20121", "Milano", "IT" }, { "1010", "Wien", "AT" }, { "9490", "Vaduz", "LI" } };
+	private static final String[] COMPLEMENTS = { "c/o Firma AG", "2. Stock", "Batiment B", "z.Hd. Buchhaltung" };
+	// Shape mix of the production table: mostly plain street addresses, some titles, few PO boxes and suffixes
+	private static final Shape[] REALISTIC_MIX = mix(
+			new Shape[] { Shape.STREET, Shape.TITLED, Shape.PO_BOX, Shape.ZIP_SUFFIX, Shape.FOREIGN },
+			new int[] { 70, 12, 8, 5, 5 });
+	private static final int DUPLICATE_WINDOW = 1024;
+
+	private final Random random;
+	private final UnstructuredAddress[] recent = new UnstructuredAddress[DUPLICATE_WINDOW];
+	private long generated;
+
+	public AddressCorpus(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public List<UnstructuredAddress> generate(Shape shape, int count) {
+		List<UnstructuredAddress> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(next(shape, Integer.toString(i + 1)));
+		}
+		return result;
+	}
+
+	public List<UnstructuredAddress> generateMixed(int count) {
+		Shape[] shapes = Shape.values();
+		List<UnstructuredAddress> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(next(shapes[random.nextInt(shapes.length)], Integer.toString(i + 1)));
+		}
+		return result;
+	}
+
+	/**
+	 * Next address of a realistic mix. With probability {@code duplicateRate} the lines of one of the last
+	 * {@value #DUPLICATE_WINDOW} generated addresses are repeated under the new id, like a customer entered twice.
+	 */
+	public UnstructuredAddress nextRealistic(String id, double duplicateRate) {
+		if (generated > 0 && random.nextDouble() < duplicateRate) {
+			UnstructuredAddress original = recent[random.nextInt((int) Math.min(generated, DUPLICATE_WINDOW))];
+			return new UnstructuredAddress(id, original.lines().toArray(new String[0]));
+		}
+		UnstructuredAddress addr = next(pick(REALISTIC_MIX), id);
+		recent[(int) (generated++ % DUPLICATE_WINDOW)] = addr;
+		return addr;
+	}
+
+	public UnstructuredAddress next(Shape shape, String id) {
+		List<String> lines = new ArrayList<>(6);
+		if (shape == Shape.TITLED) {
+			lines.add(pick(TITLES));
+		}
+		lines.add(pick(LASTNAMES) + " " + pick(FIRSTNAMES));
+		if (random.nextInt(8) == 0) {
+			lines.add(pick(COMPLEMENTS));
+		}
+
+		if (shape == Shape.PO_BOX) {
+			lines.add(pick(PO_BOXES) + " " + (1 + random.nextInt(9999)));
+		} else {
+			lines.add(street());
+		}
+
+		if (shape == Shape.FOREIGN) {
+			String[] locality = pick(FOREIGN);
+			lines.add(locality[0] + " " + locality[1]);
+			lines.add(locality[2]);
+		} else {
+			String[] locality = pick(LOCALITIES);
+			String zip = locality[0];
+			if (shape == Shape.ZIP_SUFFIX) {
+				zip += (random.nextBoolean() ? "-" : "") + String.format("%02d", 1 + random.nextInt(99));
+			}
+			lines.add(zip + " " + locality[1]);
+		}
+
+		String[] padded = new String[6];
+		for (int i = 0; i < 6; i++) {
+			padded[i] = i < lines.size() ? lines.get(i) : "";
+		}
+		return new UnstructuredAddress(id, padded);
+	}
+
+	private String street() {
+		return pick(STREETS) + " " + (1 + random.nextInt(250)) + pick(NUMBER_SUFFIXES);
+	}
+
+	private static Shape[] mix(Shape[] shapes, int[] weights) {
+		List<Shape> mix = new ArrayList<>();
+		for (int i = 0; i < shapes.length; i++) {
+			for (int w = 0; w < weights[i]; w++) {
+				mix.add(shapes[i]);
+			}
+		}
+		return mix.toArray(new Shape[0]);
+	}
+
+	private <T> T pick(T[] values) {
+		return values[random.nextInt(values.length)];
+	}
+}
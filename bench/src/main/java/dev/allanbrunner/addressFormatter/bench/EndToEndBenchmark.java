@@ -0,0 +1,357 @@
+package dev.allanbrunner.addressFormatter.bench;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import dev.allanbrunner.addressFormatter.address.AddressFormatterService;
+import dev.allanbrunner.addressFormatter.address.AddressLinkUpdater;
+import dev.allanbrunner.addressFormatter.address.StructuredAddressBatchWriter;
+import dev.allanbrunner.addressFormatter.address.UnstructuredAddress;
+import dev.allanbrunner.addressFormatter.db.IdBlockAllocator;
+import dev.allanbrunner.addressFormatter.db.PoolConfig;
+import dev.allanbrunner.addressFormatter.db.PooledConnection;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+import dev.allanbrunner.addressFormatter.metrics.LatencyHistogram;
+import dev.allanbrunner.addressFormatter.metrics.MigrationMetrics;
+import dev.allanbrunner.addressFormatter.pipeline.ChunkWriter;
+import dev.allanbrunner.addressFormatter.pipeline.MigrationPipeline;
+import dev.allanbrunner.addressFormatter.pipeline.PipelineConfig;
+
+/**
+ * Full-run benchmark: loads a synthetic {@code FCF_DEMANDS} table, then migrates it the way {@code Main} does, through
+ * {@link MigrationPipeline}, {@link ChunkWriter}, {@link StructuredAddressBatchWriter} and {@link AddressLinkUpdater},
+ * and reports throughput, per-chunk latency and resource use. It runs against H2 in MS SQL Server mode by default;
+ * {@code --url} points it at a real server instead. H2 has no {@code sp_sequence_get_range}, so there the address ids
+ * come from a sequence that steps by a whole block.
+ *
+ * <pre>
+ * --rows &lt;n&gt;           source rows to generate, 1000 to 10000000 (default 100000)
+ * --duplicates &lt;f&gt;     fraction of rows repeating an earlier address (default 0.05)
+ * --seed &lt;n&gt;           generator seed (default 20240501)
+ * --chunk &lt;n&gt;          rows written and linked per chunk (default 1000)
+ * --page &lt;n&gt;           source rows per keyset page (default 1000)
+ * --threads &lt;n&gt;        formatter threads (default: available processors)
+ * --url &lt;jdbc-url&gt;     database to run against (default in-memory H2, MSSQLServer mode)
+ * --user &lt;name&gt;, --password &lt;secret&gt;
+ * --out &lt;file&gt;         CSV file for the reported figures
+ * --baseline &lt;file&gt;    earlier CSV file to compare against
+ * </pre>
+ */
+public final class EndToEndBenchmark {
+	private static final String SOURCE_TABLE = "FCF_DEMANDS";
+	private static final String LINK_TABLE = "FCF_TEMP_DEMANDS";
+	private static final String TARGET_TABLE = "Addresses_TEMP";
+	private static final String[] SOURCE_LINES = { "RECEIVER1", "RECEIVER2", "RECEIVER3", "RECEIVER4", "RECEIVER5" };
+	private static final int LOAD_BATCH = 1000;
+	private static final int ID_BLOCK_SIZE = 1000;
+	private static final String ID_SEQUENCE = TARGET_TABLE + "_ID_SEQ";
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private EndToEndBenchmark() {}
+
+	public static void main(String[] args) throws Exception {
+		int rows = 100_000;
+		double duplicates = 0.05;
+		long seed = 20240501L;
+		int chunk = 1000;
+		int page = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String url = "jdbc:h2:mem:e2e;MODE=MSSQLServer;DATABASE_TO_UPPER=FALSE;DB_CLOSE_DELAY=-1";
+		String user = "sa";
+		String password = "";
+		Path out = null;
+		Path baseline = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--rows" -> rows = Integer.parseInt(args[++i]);
+			case "--duplicates" -> duplicates = Double.parseDouble(args[++i]);
+			case "--seed" -> seed = Long.parseLong(args[++i]);
+			case "--chunk" -> chunk = Integer.parseInt(args[++i]);
+			case "--page" -> page = Integer.parseInt(args[++i]);
+			case "--threads" -> threads = Integer.parseInt(args[++i]);
+			case "--url" -> url = args[++i];
+			case "--user" -> user = args[++i];
+			case "--password" -> password = args[++i];
+			case "--out" -> out = Path.of(args[++i]);
+			case "--baseline" -> baseline = Path.of(args[++i]);
+			default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (rows < 1000 || rows > 10_000_000) {
+			throw new IllegalArgumentException("--rows must be between 1000 and 10000000");
+		}
+
+		boolean h2 = url.startsWith("jdbc:h2:");
+		try (SqlClient client = new SqlClient(url, user, password, page, PoolConfig.defaults().withMaxSize(4))) {
+			createSchema(client, h2);
+			long loadStart = System.nanoTime();
+			load(client, rows, duplicates, seed);
+			System.out.printf(Locale.ROOT, "Loaded %d source rows in %.1f s%n", rows,
+					(System.nanoTime() - loadStart) / 1e9);
+
+			IdBlockAllocator ids = h2 ? new SequenceStepAllocator(ID_SEQUENCE, ID_BLOCK_SIZE, client)
+					: new IdBlockAllocator(ID_SEQUENCE, ID_BLOCK_SIZE, client);
+			Map<String, Double> figures = migrate(client, ids, new PipelineConfig(threads, chunk * 4, chunk), page);
+			figures.put("linked", (double) countLinked(client));
+			report(figures);
+			if (out != null) {
+				write(out, figures);
+				System.out.println("Results written to " + out);
+			}
+			if (baseline != null) {
+				compare(read(baseline), figures);
+			}
+		}
+	}
+
+	private static Map<String, Double> migrate(SqlClient client, IdBlockAllocator ids, PipelineConfig config, int page)
+			throws Exception {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		MigrationMetrics metrics = new MigrationMetrics();
+		ChunkWriter writer = new ChunkWriter(new StructuredAddressBatchWriter(TARGET_TABLE, ids, client),
+				new AddressLinkUpdater(LINK_TABLE, "IDDEMAND", "PAY_ADDR_ID", TARGET_TABLE, "ID_FPR_PAYREL",
+						"OLD_TBL_ID", client),
+				null, null, null, metrics);
+		LatencyHistogram chunkLatency = new LatencyHistogram();
+		Allocation allocation = new Allocation();
+		Resources before = Resources.sample();
+		long start = System.nanoTime();
+
+		Iterator<UnstructuredAddress> rows = AddressFormatterService
+				.streamUnstructuredAddresses(SOURCE_TABLE, "IDDEMAND", SOURCE_LINES, page, client).iterator();
+		long migrated = new MigrationPipeline(config, metrics).run(rows, AddressFormatterService::format, chunk -> {
+			long chunkStart = System.nanoTime();
+			writer.write(chunk);
+			chunkLatency.record(System.nanoTime() - chunkStart);
+			allocation.sample();
+		});
+		long elapsed = System.nanoTime() - start;
+		Resources after = Resources.sample();
+
+		LatencyHistogram.Snapshot latency = chunkLatency.snapshot();
+		Map<String, Double> figures = new LinkedHashMap<>();
+		figures.put("rows", (double) migrated);
+		figures.put("seconds", elapsed / 1e9);
+		figures.put("rows_per_second", migrated / (elapsed / 1e9));
+		figures.put("chunk_p50_ms", latency.p50Nanos() / 1e6);
+		// Percentiles are bucket bounds and can overshoot the largest sample
+		figures.put("chunk_p99_ms", Math.min(latency.p99Nanos(), latency.maxNanos()) / 1e6);
+		figures.put("chunk_max_ms", latency.maxNanos() / 1e6);
+		figures.put("cpu_seconds", (after.cpuNanos - before.cpuNanos) / 1e9);
+		figures.put("alloc_bytes_per_row", (double) allocation.total() / migrated);
+		figures.put("gc_count", (double) (after.gcCount - before.gcCount));
+		figures.put("gc_ms", (double) (after.gcMillis - before.gcMillis));
+		figures.put("peak_heap_mb", after.peakHeapBytes / (1024.0 * 1024.0));
+		return figures;
+	}
+
+	private static void createSchema(SqlClient client, boolean h2) throws SQLException {
+		for (String table : List.of(TARGET_TABLE, LINK_TABLE, SOURCE_TABLE)) {
+			client.executeNonQuery("DROP TABLE IF EXISTS " + table);
+		}
+		client.executeNonQuery("DROP SEQUENCE IF EXISTS " + ID_SEQUENCE);
+		if (h2) {
+			client.executeNonQuery("CREATE SEQUENCE " + ID_SEQUENCE + " START WITH 1 INCREMENT BY " + ID_BLOCK_SIZE);
+		}
+		StringBuilder receivers = new StringBuilder();
+		for (String line : SOURCE_LINES) {
+			receivers.append(", ").append(line).append(" nvarchar(70) NULL");
+		}
+		client.executeNonQuery("CREATE TABLE " + SOURCE_TABLE + " (IDDEMAND varchar(64) NOT NULL PRIMARY KEY"
+				+ receivers + ")");
+		client.executeNonQuery("CREATE TABLE " + LINK_TABLE
+				+ " (IDDEMAND varchar(64) NOT NULL PRIMARY KEY, PAY_ADDR_ID decimal(20,0) NULL)");
+		// The production table and its OLD_TBL_ID index; H2 only lacks the SQL Server collation
+		if (h2) {
+			client.ensureAddressTable(TARGET_TABLE, null);
+		} else {
+			client.ensureAddressTable(TARGET_TABLE);
+			client.ensureIdSequence(ID_SEQUENCE, TARGET_TABLE, "ID_FPR_PAYREL");
+		}
+	}
+
+	private static void load(SqlClient client, int rows, double duplicates, long seed) throws SQLException {
+		AddressCorpus corpus = new AddressCorpus(seed);
+		StringBuilder columns = new StringBuilder("IDDEMAND");
+		StringBuilder placeholders = new StringBuilder("?");
+		for (String line : SOURCE_LINES) {
+			columns.append(", ").append(line);
+			placeholders.append(", ?");
+		}
+		String sourceSql = "INSERT INTO " + SOURCE_TABLE + " (" + columns + ") VALUES (" + placeholders + ")";
+		String linkSql = "INSERT INTO " + LINK_TABLE + " (IDDEMAND) VALUES (?)";
+
+		try (PooledConnection pooled = client.acquire()) {
+			Connection connection = pooled.connection();
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement source = pooled.prepare(sourceSql);
+				PreparedStatement link = pooled.prepare(linkSql);
+				for (int i = 1; i <= rows; i++) {
+					// Zero-padded so the keyset order of the varchar key matches the generation order
+					String id = String.format(Locale.ROOT, "%010d", i);
+					List<String> lines = corpus.nextRealistic(id, duplicates).lines();
+					source.setString(1, id);
+					for (int l = 0; l < SOURCE_LINES.length; l++) {
+						source.setString(l + 2, SqlClient.nullable(lines.get(l)));
+					}
+					source.addBatch();
+					link.setString(1, id);
+					link.addBatch();
+					if (i % LOAD_BATCH == 0 || i == rows) {
+						source.executeBatch();
+						link.executeBatch();
+						connection.commit();
+					}
+				}
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+
+	private static long countLinked(SqlClient client) throws SQLException {
+		return Long.parseLong(client
+				.executeQuery("SELECT COUNT(*) FROM " + LINK_TABLE + " WHERE PAY_ADDR_ID IS NOT NULL", false).get(0)
+				.get(0));
+	}
+
+	private static void report(Map<String, Double> figures) {
+		figures.forEach((name, value) -> System.out.printf(Locale.ROOT, "%-22s %14.2f%n", name, value));
+	}
+
+	private static void write(Path out, Map<String, Double> figures) throws IOException {
+		if (out.getParent() != null) {
+			Files.createDirectories(out.getParent());
+		}
+		StringBuilder csv = new StringBuilder("metric,value\n");
+		figures.forEach((name, value) -> csv.append(name).append(',').append(value).append('\n'));
+		Files.writeString(out, csv, StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, Double> read(Path file) throws IOException {
+		Map<String, Double> figures = new LinkedHashMap<>();
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		for (String line : lines.subList(1, lines.size())) {
+			String[] cells = line.split(",", 2);
+			figures.put(cells[0], Double.parseDouble(cells[1]));
+		}
+		return figures;
+	}
+
+	private static void compare(Map<String, Double> baseline, Map<String, Double> figures) {
+		System.out.println();
+		System.out.printf(Locale.ROOT, "%-22s %14s %14s %9s%n", "metric", "baseline", "current", "change");
+		figures.forEach((name, value) -> {
+			Double base = baseline.get(name);
+			if (base == null) {
+				return;
+			}
+			double change = base == 0 ? 0 : (value - base) / base * 100;
+			System.out.printf(Locale.ROOT, "%-22s %14.2f %14.2f %+8.1f%%%n", name, base, value, change);
+		});
+	}
+
+	/** Process-wide counters. */
+	private record Resources(long cpuNanos, long gcCount, long gcMillis, long peakHeapBytes) {
+		static Resources sample() {
+			long gcCount = 0;
+			long gcMillis = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				gcCount += Math.max(0, gc.getCollectionCount());
+				gcMillis += Math.max(0, gc.getCollectionTime());
+			}
+			long peakHeap = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					peakHeap += pool.getPeakUsage().getUsed();
+				}
+			}
+			long cpu = THREADS.getCurrentThreadCpuTime();
+			if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+				cpu = os.getProcessCpuTime();
+			}
+			return new Resources(cpu, gcCount, gcMillis, peakHeap);
+		}
+	}
+
+	/**
+	 * Bytes allocated by all threads since creation. The pipeline's threads end with the run, so every thread's count
+	 * is sampled after each chunk and its last sample is kept.
+	 */
+	private static final class Allocation {
+		private final Map<Long, Long> initial = new HashMap<>();
+		private final Map<Long, Long> latest = new HashMap<>();
+
+		Allocation() {
+			sample();
+			initial.putAll(latest);
+		}
+
+		void sample() {
+			long[] ids = THREADS.getAllThreadIds();
+			long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+			for (int i = 0; i < ids.length; i++) {
+				if (bytes[i] >= 0) {
+					latest.put(ids[i], bytes[i]);
+				}
+			}
+		}
+
+		long total() {
+			sample();
+			long total = 0;
+			for (Map.Entry<Long, Long> entry : latest.entrySet()) {
+				total += entry.getValue() - initial.getOrDefault(entry.getKey(), 0L);
+			}
+			return total;
+		}
+	}
+
+	/** Reserves id blocks from a sequence created with {@code INCREMENT BY} the block size, for H2. */
+	private static final class SequenceStepAllocator extends IdBlockAllocator {
+		private final String sql;
+		private final int blockSize;
+		private final SqlClient client;
+
+		SequenceStepAllocator(String sequenceName, int blockSize, SqlClient client) {
+			super(sequenceName, blockSize, client);
+			this.sql = "SELECT NEXT VALUE FOR " + sequenceName;
+			this.blockSize = blockSize;
+			this.client = client;
+		}
+
+		@Override
+		protected long reserve(int size) throws SQLException {
+			if (size != blockSize) {
+				throw new IllegalArgumentException("Only whole blocks of " + blockSize + " ids can be reserved");
+			}
+			try (PooledConnection pooled = client.acquire(); ResultSet resultSet = pooled.prepare(sql).executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+	}
+}
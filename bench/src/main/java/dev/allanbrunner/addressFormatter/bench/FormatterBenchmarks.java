@@ -0,0 +1,97 @@
+package dev.allanbrunner.addressFormatter.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dev.allanbrunner.addressFormatter.address.AddressFormatterService;
+import dev.allanbrunner.addressFormatter.address.CachingAddressFormatter;
+import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+import dev.allanbrunner.addressFormatter.address.UnstructuredAddress;
+import dev.allanbrunner.addressFormatter.bench.AddressCorpus.Shape;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+
+/**
+ * JMH benchmarks for the formatting and SQL-building hot paths. Every invocation handles the next address of a fixed
+ * corpus, so one operation is one address; run with {@code -prof gc} for the bytes allocated per address
+ * ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FormatterBenchmarks {
+	private static final int CORPUS_SIZE = 4096;
+	private static final long SEED = 20240501L;
+
+	/** Shape of the corpus of {@link #format}; {@code MIXED} draws every address from a random shape. */
+	@Param({ "STREET", "PO_BOX", "TITLED", "ZIP_SUFFIX", "FOREIGN", "MIXED" })
+	public String shape;
+
+	private UnstructuredAddress[] corpus;
+	private UnstructuredAddress[] repeated;
+	private StructuredAddress[] structured;
+	private CachingAddressFormatter cache;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		List<UnstructuredAddress> addresses = shape.equals("MIXED") ? new AddressCorpus(SEED).generateMixed(CORPUS_SIZE)
+				: new AddressCorpus(SEED).generate(Shape.valueOf(shape), CORPUS_SIZE);
+		corpus = addresses.toArray(new UnstructuredAddress[0]);
+
+		// An eighth of the corpus repeated over and over, so the cache hits most of the time
+		repeated = new UnstructuredAddress[CORPUS_SIZE];
+		for (int i = 0; i < CORPUS_SIZE; i++) {
+			repeated[i] = corpus[i % (CORPUS_SIZE / 8)];
+		}
+		cache = new CachingAddressFormatter(CORPUS_SIZE);
+
+		List<StructuredAddress> formatted = new ArrayList<>(CORPUS_SIZE);
+		for (UnstructuredAddress raw : corpus) {
+			formatted.add(AddressFormatterService.format(raw));
+		}
+		structured = formatted.toArray(new StructuredAddress[0]);
+	}
+
+	@Benchmark
+	public StructuredAddress format() {
+		return AddressFormatterService.format(corpus[index()]);
+	}
+
+	@Benchmark
+	public StructuredAddress formatCachedRepeats() {
+		return cache.format(repeated[index()]);
+	}
+
+	@Benchmark
+	public Object[] insertParameters() {
+		return AddressFormatterService.insertParameters(structured[index()]);
+	}
+
+	@Benchmark
+	public void nullable(Blackhole blackhole) {
+		StructuredAddress addr = structured[index()];
+		blackhole.consume(SqlClient.nullable(addr.name()));
+		blackhole.consume(SqlClient.nullable(addr.city()));
+	}
+
+	private int index() {
+		return next++ & (CORPUS_SIZE - 1);
+	}
+}
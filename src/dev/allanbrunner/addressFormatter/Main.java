@@ -1,16 +1,60 @@
 package dev.allanbrunner.addressFormatter;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import dev.allanbrunner.addressFormatter.address.AddressDeduplicator;
+import dev.allanbrunner.addressFormatter.address.AddressFileReader;
 import dev.allanbrunner.addressFormatter.address.AddressFormatterService;
+import dev.allanbrunner.addressFormatter.address.AddressLinkUpdater;
+import dev.allanbrunner.addressFormatter.address.AddressSink;
+import dev.allanbrunner.addressFormatter.address.BulkCopyAddressSink;
+import dev.allanbrunner.addressFormatter.address.CachingAddressFormatter;
+import dev.allanbrunner.addressFormatter.address.DeadLetterWriter;
+import dev.allanbrunner.addressFormatter.address.DeltaTracker;
+import dev.allanbrunner.addressFormatter.address.KeyRange;
+import dev.allanbrunner.addressFormatter.address.LinkReconciler;
+import dev.allanbrunner.addressFormatter.address.NameSplitter;
+import dev.allanbrunner.addressFormatter.address.PostalCodeIndex;
+import dev.allanbrunner.addressFormatter.address.SourceFilter;
 import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+import dev.allanbrunner.addressFormatter.address.StagingFileAddressSink;
+import dev.allanbrunner.addressFormatter.address.StructuredAddressBatchWriter;
 import dev.allanbrunner.addressFormatter.address.UnstructuredAddress;
+import dev.allanbrunner.addressFormatter.db.AdaptiveBatchSize;
+import dev.allanbrunner.addressFormatter.db.IdBlockAllocator;
+import dev.allanbrunner.addressFormatter.db.PoolConfig;
 import dev.allanbrunner.addressFormatter.db.SqlClient;
+import dev.allanbrunner.addressFormatter.metrics.MigrationMetrics;
+import dev.allanbrunner.addressFormatter.metrics.ProgressReporter;
+import dev.allanbrunner.addressFormatter.metrics.Stage;
+import dev.allanbrunner.addressFormatter.pipeline.ChunkHandler;
+import dev.allanbrunner.addressFormatter.pipeline.ChunkWriter;
+import dev.allanbrunner.addressFormatter.pipeline.CompletionWatermark;
+import dev.allanbrunner.addressFormatter.pipeline.JobScheduler;
+import dev.allanbrunner.addressFormatter.pipeline.MigrationJob;
+import dev.allanbrunner.addressFormatter.pipeline.MigrationPipeline;
+import dev.allanbrunner.addressFormatter.pipeline.PipelineConfig;
+import dev.allanbrunner.addressFormatter.pipeline.ProgressJournal;
+import dev.allanbrunner.addressFormatter.pipeline.ShardedMigration;
+import dev.allanbrunner.addressFormatter.pipeline.WriteBehindHandler;
 import dev.allanbrunner.addressFormatter.util.Env;
 import dev.allanbrunner.addressFormatter.util.EnvLoader;
 
 public class Main {
 	private static final int BATCH_SIZE = 200;
+	private static final int ID_BLOCK_SIZE = 1000;
+	private static final MigrationJob DEFAULT_JOB = new MigrationJob("demands", "FCF_DEMANDS", "IDDEMAND",
+			List.of("RECEIVER1", "RECEIVER2", "RECEIVER3", "RECEIVER4", "RECEIVER5"), "Addresses_TEMP",
+			new MigrationJob.Link("FCF_TEMP_DEMANDS", "IDDEMAND", "PAY_ADDR_ID"));
 
 	private Main() {}
 
@@ -18,31 +62,161 @@ public class Main {
 		try {
 			Env env = EnvLoader.loadDefault();
 
-			String server = env.require("DB_SERVER");
-			String port = env.require("DB_PORT");
-			String name = env.require("DB_NAME");
-			String user = env.require("DB_USER");
-			String pwd = env.require("DB_PASS");
+			int maxRows = env.getInt("MAX_ROWS", 0);
+			int formatCacheSize = env.getInt("FORMAT_CACHE_SIZE", 0);
+			String postalCodeFile = env.get("POSTAL_CODE_FILE", null);
+			String checkpointFile = env.get("CHECKPOINT_FILE", null);
+			int progressSeconds = env.getInt("PROGRESS_INTERVAL_SECONDS", 10);
+			String sinkSpec = env.get("SINK", "jdbc");
+			int shardCount = env.getInt("SHARDS", 1);
+			String inputFile = env.get("INPUT_FILE", null);
+			boolean deltaMode = env.getInt("DELTA", 0) != 0;
+			String versionColumn = env.get("DELTA_VERSION_COLUMN", null);
+			boolean dedupMode = env.getInt("DEDUP", 0) != 0;
+			int writeBehindDepth = env.getInt("WRITE_BEHIND_DEPTH", 2);
+			String jobsFile = env.get("JOBS_FILE", null);
+			boolean reconcile = env.getInt("RECONCILE", 0) != 0;
+			PostalCodeIndex postalCodes = postalCodeFile != null ? PostalCodeIndex.load(Path.of(postalCodeFile)) : null;
+			String firstNameFile = env.get("FIRST_NAMES_FILE", null);
+			String particleFile = env.get("NAME_PARTICLES_FILE", null);
+			if (firstNameFile != null) {
+				NameSplitter names = NameSplitter.load(Path.of(firstNameFile),
+						particleFile != null ? Path.of(particleFile) : null);
+				AddressFormatterService.useNameSplitter(names);
+				System.out.println("Loaded " + names.firstNameCount() + " first names from " + firstNameFile);
+			}
 
-			try (SqlClient client = new SqlClient(server, port, name, user, pwd, BATCH_SIZE)) {
-				List<UnstructuredAddress> unstructuredAddresses = AddressFormatterService.getUnstructuredAddresses(
-						"FCF_DEMANDS", "TOP 15 IDDEMAND",
-						new String[] { "RECEIVER1", "RECEIVER2", "RECEIVER3", "RECEIVER4", "RECEIVER5", }, client);
+			if (jobsFile != null && !reconcile && (sinkSpec.startsWith("file:") || inputFile != null)) {
+				System.out.println("JOBS_FILE is ignored with a file sink or INPUT_FILE");
+				jobsFile = null;
+			}
+			List<MigrationJob> jobs = jobsFile != null ? MigrationJob.load(Path.of(jobsFile)) : List.of(DEFAULT_JOB);
+			int jobSlots = Math.max(1, Math.min(env.getInt("JOB_SLOTS", jobs.size()), jobs.size()));
 
-				String table = "Addresses_TEMP";
-				client.ensureAddressTable(table);
-				System.out.printf("Table %s existence ensured%n", table);
+			PoolConfig defaults = PoolConfig.defaults();
+			int acquireTimeoutMs = env.getInt("DB_POOL_ACQUIRE_TIMEOUT_MS", (int) defaults.acquireTimeout().toMillis());
+			int idleTimeoutMs = env.getInt("DB_POOL_IDLE_TIMEOUT_MS", (int) defaults.idleTimeout().toMillis());
+			// Each shard holds one connection at a time, plus one for whoever is reserving the next id block
+			int poolSize = Math.max(env.getInt("DB_POOL_SIZE", defaults.maxSize()), jobSlots * (shardCount + 1));
+			int reconcileThreads = env.getInt("RECONCILE_THREADS", poolSize);
+			if (reconcile) {
+				poolSize = Math.max(poolSize, reconcileThreads);
+			}
+			PoolConfig poolConfig = new PoolConfig(poolSize, Duration.ofMillis(acquireTimeoutMs),
+					Duration.ofMillis(idleTimeoutMs), defaults.validationTimeout(),
+					env.getInt("DB_STATEMENT_CACHE_SIZE", defaults.statementCacheSize()));
 
-				for (UnstructuredAddress unstructured : unstructuredAddresses) {
-					StructuredAddress structured = AddressFormatterService.format(unstructured);
-					System.out.println("Address structured");
+			if (reconcile) {
+				boolean serverChecksums = !"streamed".equals(env.get("RECONCILE_CHECKSUMS", "server"));
+				// After a DEDUP run, links to another row's address are checked against the row's own lines
+				Function<UnstructuredAddress, StructuredAddress> dedupFormatter = null;
+				if (dedupMode) {
+					Function<UnstructuredAddress, StructuredAddress> format = AddressFormatterService::format;
+					dedupFormatter = postalCodes != null ? format.andThen(postalCodes::validate) : format;
+				}
+				boolean clean = true;
+				try (SqlClient client = openClient(env, poolConfig)) {
+					for (MigrationJob job : jobs) {
+						clean &= reconcile(job, env.getInt("RECONCILE_CHUNKS", 256), reconcileThreads, serverChecksums,
+								dedupFormatter, client);
+					}
+				}
+				if (!clean) {
+					System.exit(2);
+				}
+				return;
+			}
 
-					AddressFormatterService.saveStructuredAddress(table, structured, client);
-					System.out.println("Address saved in DB");
+			PipelineConfig pipelineDefaults = PipelineConfig.defaults(BATCH_SIZE);
+			int formatterBudget = env.getInt("PIPELINE_FORMATTERS", pipelineDefaults.formatterThreads());
+			int queueCapacity = env.getInt("PIPELINE_QUEUE_CAPACITY", pipelineDefaults.queueCapacity());
 
-					AddressFormatterService.updateAddrPayId("FCF_TEMP_DEMANDS", "IDDEMAND", "PAY_ADDR_ID", table,
-							"ID_FPR_PAYREL", "OLD_TBL_ID", structured.id(), client);
-					System.out.println("Link updated in DB");
+			if (checkpointFile != null && (sinkSpec.startsWith("file:") || inputFile != null)) {
+				System.out.println("CHECKPOINT_FILE is ignored with a file sink or INPUT_FILE");
+				checkpointFile = null;
+			}
+			if (deltaMode && sinkSpec.startsWith("file:")) {
+				System.out.println("DELTA is ignored with a file sink");
+				deltaMode = false;
+			}
+			if (deltaMode && checkpointFile != null) {
+				// Stored hashes already make an interrupted delta run restartable: rows without one are rewritten, and
+				// the addresses written for them before are deleted once the new ones are linked
+				System.out.println("CHECKPOINT_FILE is ignored with DELTA");
+				checkpointFile = null;
+			}
+			if (dedupMode && deltaMode) {
+				// Delta mode deletes a changed row's address, which other rows may share
+				System.out.println("DEDUP is ignored with DELTA");
+				dedupMode = false;
+			}
+			if (shardCount > 1 && inputFile != null) {
+				System.out.println("SHARDS is ignored with INPUT_FILE");
+				shardCount = 1;
+			}
+			if (dedupMode && checkpointFile != null) {
+				// Resuming deletes the addresses owned by rows past the checkpoint, but formatters and shards reorder
+				// rows, so committed rows before it may already be linked to one of those shared addresses
+				System.out.println("CHECKPOINT_FILE is ignored with DEDUP");
+				checkpointFile = null;
+			}
+			// Reading a file into a staging file does not need the database at all
+			boolean offline = inputFile != null && sinkSpec.startsWith("file:");
+
+			Duration batchTarget = Duration.ofMillis(env.getInt("BATCH_TARGET_LATENCY_MS", 1000));
+			// Concurrent jobs split the deduplication memory between them like they split the formatter threads
+			JobSettings settings = new JobSettings(sinkSpec, shardCount, maxRows, deltaMode, versionColumn, dedupMode,
+					env.getInt("DEDUP_MEMORY_ENTRIES", 4_000_000) / jobSlots,
+					Path.of(env.get("DEDUP_SPILL_DIR", System.getProperty("java.io.tmpdir"))), writeBehindDepth,
+					queueCapacity, Duration.ofSeconds(progressSeconds), batchTarget, env.getInt("READ_BATCH_MIN", 100),
+					env.getInt("READ_BATCH_MAX", 5000), env.getInt("WRITE_BATCH_MIN", 50),
+					env.getInt("WRITE_BATCH_MAX", 2000));
+
+			try (SqlClient client = offline ? null : openClient(env, poolConfig);
+					ProgressJournal journal = checkpointFile != null ? ProgressJournal.open(Path.of(checkpointFile))
+							: null;
+					AddressFileReader fileInput = inputFile != null
+							? AddressFileReader.open(Path.of(inputFile), env.getInt("INPUT_HEADER", 1) != 0,
+									env.getInt("INPUT_PARSER_THREADS", Runtime.getRuntime().availableProcessors()))
+							: null) {
+				CachingAddressFormatter cache = formatCacheSize > 0 ? new CachingAddressFormatter(formatCacheSize) : null;
+				Function<UnstructuredAddress, StructuredAddress> cachedFormatter = cache != null ? cache::format
+						: AddressFormatterService::format;
+				Function<UnstructuredAddress, StructuredAddress> formatter = postalCodes != null
+						? cachedFormatter.andThen(postalCodes::validate)
+						: cachedFormatter;
+
+				// Every target's tables exist before any job starts
+				for (MigrationJob job : jobs) {
+					prepareTarget(job, settings, client);
+				}
+
+				boolean solo = jobs.size() == 1;
+				JobScheduler scheduler = new JobScheduler(jobSlots, formatterBudget);
+				if (!solo) {
+					System.out.printf("Running %d jobs, %d at a time with %d formatter threads each%n", jobs.size(),
+							jobSlots, scheduler.formatterShare(jobs.size()));
+				}
+				long started = System.nanoTime();
+				long processed;
+				ProgressReporter reporter = solo ? null
+						: new ProgressReporter(() -> scheduler.progress() + acquireSummary(client),
+								settings.progressInterval(), System.out);
+				try {
+					processed = scheduler.run(jobs, (job, formatterThreads, metrics) -> runJob(job, settings,
+							formatterThreads, metrics, client, journal, fileInput, formatter, solo));
+				} finally {
+					close(reporter);
+				}
+				if (!solo) {
+					System.out.printf("%d addresses processed by %d jobs in %.0fs%n", processed, jobs.size(),
+							(System.nanoTime() - started) / 1e9);
+				}
+				if (cache != null) {
+					System.out.println("Format cache: " + cache.stats());
+				}
+				if (postalCodes != null) {
+					System.out.println("Postal code validation: " + postalCodes.stats());
 				}
 			}
 		} catch (Exception e) {
@@ -51,4 +225,264 @@ public class Main {
 			System.exit(1);
 		}
 	}
+
+	/**
+	 * Runs one job: reads its source rows, formats them and writes and links them in chunks. A {@code solo} job reports
+	 * its own detailed progress; otherwise the scheduler reports for all jobs and output lines carry the job name.
+	 */
+	private static long runJob(MigrationJob migrationJob, JobSettings settings, int formatterThreads,
+			MigrationMetrics metrics, SqlClient client, ProgressJournal journal, AddressFileReader fileInput,
+			Function<UnstructuredAddress, StructuredAddress> formatter, boolean solo) throws Exception {
+		String label = solo ? "" : migrationJob.name() + ": ";
+		String table = migrationJob.targetTable();
+		String sourceTable = migrationJob.sourceTable();
+		String sourceId = migrationJob.idColumn();
+		String[] sourceLines = migrationJob.lineColumnArray();
+		String job = migrationJob.checkpointKey();
+		AdaptiveBatchSize readSize = new AdaptiveBatchSize("read", settings.readMin(), settings.readMax(), BATCH_SIZE,
+				settings.batchTarget());
+		AdaptiveBatchSize writeSize = new AdaptiveBatchSize("write", settings.writeMin(), settings.writeMax(),
+				BATCH_SIZE, settings.batchTarget());
+
+		try (AddressSink sink = openSink(settings.sinkSpec(), table, client);
+				AddressDeduplicator dedup = settings.dedup() && sink.acceptsAssignedIds() ? new AddressDeduplicator(
+						new IdBlockAllocator(idSequence(table), ID_BLOCK_SIZE, client), settings.dedupMemoryEntries(),
+						settings.dedupSpillDir()) : null) {
+			if (settings.dedup() && dedup == null) {
+				System.out.println(label + "DEDUP is ignored with a sink that cannot take assigned ids");
+			}
+			MigrationJob.Link link = migrationJob.link();
+			AddressLinkUpdater linker = sink.linkable() ? new AddressLinkUpdater(link.table(), link.keyColumn(),
+					link.addressColumn(), table, "ID_FPR_PAYREL", "OLD_TBL_ID", client) : null;
+
+			DeltaTracker delta = settings.delta() ? new DeltaTracker(table, "ID_FPR_PAYREL", "OLD_TBL_ID", sourceTable,
+					client) : null;
+			SourceFilter sourceFilter = null;
+			if (delta != null && settings.versionColumn() != null && fileInput == null) {
+				sourceFilter = delta.openVersionWindow(settings.versionColumn());
+				System.out.println(label + "Delta window: " + sourceFilter);
+			}
+
+			DeadLetterWriter deadLetters = sink.linkable() ? new DeadLetterWriter(table, client) : null;
+			ChunkWriter chunkWriter = new ChunkWriter(sink, linker, delta, dedup, deadLetters, metrics, writeSize);
+			long processed;
+			if (settings.shardCount() > 1) {
+				if (settings.maxRows() > 0) {
+					System.out.println(label + "MAX_ROWS is ignored when SHARDS is set");
+				}
+				List<KeyRange> ranges = planShards(migrationJob, settings.shardCount(), journal, client, label);
+				ShardedMigration migration = new ShardedMigration(writeSize, metrics);
+				ProgressReporter reporter = solo ? new ProgressReporter(
+						() -> metrics.summary() + acquireSummary(client) + batchSummary(readSize, writeSize)
+								+ System.lineSeparator() + migration.progress(),
+						settings.progressInterval(), System.out) : null;
+				try {
+					SourceFilter filter = sourceFilter;
+					processed = migration.run(ranges,
+							range -> changedOnly(delta, AddressFormatterService.streamUnstructuredAddresses(
+									sourceTable, sourceId, sourceLines, readSize, range, filter, client).iterator()),
+							formatter, shard -> chunk -> {
+								List<String> ids = chunkWriter.write(chunk);
+								if (journal != null && ids != null) {
+									journal.commit(job + "#" + shard, ids.get(ids.size() - 1));
+								}
+							});
+				} finally {
+					close(reporter);
+				}
+			} else {
+				String resumeAfter = journal != null ? journal.lastCommitted(job).orElse(null) : null;
+				if (resumeAfter != null) {
+					long removed = AddressFormatterService.deleteAddressesAfter(table, "OLD_TBL_ID", sourceTable,
+							sourceId, resumeAfter, client);
+					System.out.printf("%sResuming after %s %s, %d uncommitted addresses removed%n", label, sourceId,
+							resumeAfter, removed);
+				}
+
+				CompletionWatermark watermark = new CompletionWatermark();
+				Iterator<UnstructuredAddress> rows = fileInput != null ? fileInput
+						: AddressFormatterService.streamUnstructuredAddresses(sourceTable, sourceId, sourceLines,
+								readSize, new KeyRange(resumeAfter, null), sourceFilter, client).iterator();
+				Stream<UnstructuredAddress> source = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+						changedOnly(delta, rows), Spliterator.ORDERED | Spliterator.NONNULL), false);
+				if (settings.maxRows() > 0) {
+					source = source.limit(settings.maxRows());
+				}
+				if (journal != null) {
+					source = source.peek(raw -> watermark.emitted(raw.id()));
+				}
+
+				ChunkHandler handler = chunk -> {
+					List<String> ids = chunkWriter.write(chunk);
+					if (journal != null && ids != null) {
+						String committed = watermark.complete(ids);
+						if (committed != null) {
+							journal.commit(job, committed);
+						}
+					}
+				};
+				MigrationPipeline pipeline = new MigrationPipeline(
+						new PipelineConfig(formatterThreads, settings.queueCapacity(), BATCH_SIZE), metrics, writeSize);
+				ProgressReporter reporter = solo ? new ProgressReporter(
+						() -> metrics.summary() + acquireSummary(client) + batchSummary(readSize, writeSize),
+						settings.progressInterval(), System.out) : null;
+				try (WriteBehindHandler writeBehind = settings.writeBehindDepth() > 0
+						? new WriteBehindHandler(handler, settings.writeBehindDepth())
+						: null) {
+					processed = pipeline.run(source.iterator(), formatter,
+							writeBehind != null ? writeBehind : handler);
+				} finally {
+					close(reporter);
+				}
+			}
+			System.out.printf("%s%d addresses processed%n", label, processed);
+			System.out.println(label + "Batch sizes:" + batchSummary(readSize, writeSize));
+			if (delta != null) {
+				delta.commitVersionWindow();
+				System.out.println(label + "Delta: " + delta.stats());
+			}
+			if (dedup != null) {
+				System.out.println(label + "Deduplication: " + dedup.stats());
+			}
+			if (deadLetters != null) {
+				System.out.println(label + "Dead letters: " + deadLetters.stats());
+			}
+			return processed;
+		}
+	}
+
+	/**
+	 * Prints every unlinked or mislinked source row of {@code job} and returns whether there were none. With a
+	 * {@code dedupFormatter}, links to addresses shared by deduplication are accepted when the content matches.
+	 */
+	private static boolean reconcile(MigrationJob job, int chunks, int threads, boolean serverChecksums,
+			Function<UnstructuredAddress, StructuredAddress> dedupFormatter, SqlClient client) throws Exception {
+		MigrationJob.Link link = job.link();
+		LinkReconciler reconciler = new LinkReconciler(link.table(), link.keyColumn(), link.addressColumn(),
+				job.targetTable(), "ID_FPR_PAYREL", "OLD_TBL_ID", client).serverChecksums(serverChecksums);
+		if (dedupFormatter != null) {
+			reconciler.sharedAddresses(job.sourceTable(), job.idColumn(), job.lineColumnArray(), dedupFormatter);
+		}
+		System.out.printf("Reconciling %s.%s with %s, %d chunks on %d threads%n", link.table(), link.addressColumn(),
+				job.targetTable(), chunks, threads);
+		long start = System.nanoTime();
+		LinkReconciler.Result result = reconciler.run(chunks, threads, issue -> System.out.println("  " + issue));
+		System.out.printf("Reconciled %s in %.1fs: %s%n", job.name(), (System.nanoTime() - start) / 1e9, result);
+		return result.clean();
+	}
+
+	/** Creates the target, id sequence, dead letter and delta tables a job writes to, unless it writes to a file. */
+	private static void prepareTarget(MigrationJob job, JobSettings settings, SqlClient client) throws Exception {
+		if (settings.sinkSpec().startsWith("file:")) {
+			return;
+		}
+		String table = job.targetTable();
+		client.ensureAddressTable(table);
+		System.out.printf("Table %s existence ensured%n", table);
+		client.ensureIdSequence(idSequence(table), table, "ID_FPR_PAYREL");
+		new DeadLetterWriter(table, client).ensureTable();
+		if (settings.delta()) {
+			new DeltaTracker(table, "ID_FPR_PAYREL", "OLD_TBL_ID", job.sourceTable(), client).ensureTables();
+		}
+	}
+
+	private static SqlClient openClient(Env env, PoolConfig poolConfig) throws Exception {
+		String server = env.require("DB_SERVER");
+		String port = env.require("DB_PORT");
+		String name = env.require("DB_NAME");
+		String user = env.require("DB_USER");
+		String pwd = env.require("DB_PASS");
+		return new SqlClient(server, port, name, user, pwd, BATCH_SIZE, poolConfig);
+	}
+
+	private static String acquireSummary(SqlClient client) {
+		return client == null ? "" : "%n  acquire %s".formatted(client.acquireLatency());
+	}
+
+	private static String batchSummary(AdaptiveBatchSize readSize, AdaptiveBatchSize writeSize) {
+		return "%n  %s%n  %s".formatted(readSize.snapshot(), writeSize.snapshot());
+	}
+
+	/** Stops {@code reporter}, which prints a final report, unless there is none. */
+	private static void close(ProgressReporter reporter) {
+		if (reporter != null) {
+			reporter.close();
+		}
+	}
+
+	private static Iterator<UnstructuredAddress> changedOnly(DeltaTracker delta, Iterator<UnstructuredAddress> rows) {
+		return delta != null ? delta.changed(rows) : rows;
+	}
+
+	/**
+	 * Splits the source keys into ranges, or reuses the split recorded by an earlier run so a resumed shard covers
+	 * exactly the keys it started with. Rows a shard wrote after its last commit are removed before it resumes.
+	 */
+	private static List<KeyRange> planShards(MigrationJob migrationJob, int shardCount, ProgressJournal journal,
+			SqlClient client, String label) throws Exception {
+		String job = migrationJob.checkpointKey();
+		String planJob = job + "#shards";
+		String recorded = journal != null ? journal.lastCommitted(planJob).orElse(null) : null;
+		List<KeyRange> ranges;
+		if (recorded != null) {
+			String[] bounds = recorded.split("\t", -1);
+			ranges = new ArrayList<>(bounds.length);
+			String after = null;
+			for (int i = 1; i <= bounds.length; i++) {
+				String upTo = i < bounds.length ? bounds[i] : null;
+				ranges.add(new KeyRange(after, upTo));
+				after = upTo;
+			}
+			if (ranges.size() != shardCount) {
+				System.out.printf("%sResuming with the %d shards of the previous run instead of %d%n", label,
+						ranges.size(), shardCount);
+			}
+		} else {
+			ranges = AddressFormatterService.partitionKeys(migrationJob.sourceTable(), migrationJob.idColumn(),
+					shardCount, client);
+			if (journal != null) {
+				StringBuilder plan = new StringBuilder(Integer.toString(ranges.size()));
+				for (int i = 0; i < ranges.size() - 1; i++) {
+					plan.append('\t').append(ranges.get(i).upTo());
+				}
+				journal.commit(planJob, plan.toString());
+			}
+			return ranges;
+		}
+
+		List<KeyRange> remaining = new ArrayList<>(ranges.size());
+		for (int i = 0; i < ranges.size(); i++) {
+			KeyRange range = ranges.get(i).resumeAfter(journal.lastCommitted(job + "#" + i).orElse(null));
+			long removed = AddressFormatterService.deleteAddressesIn(migrationJob.targetTable(), "OLD_TBL_ID",
+					migrationJob.sourceTable(), migrationJob.idColumn(), range, client);
+			System.out.printf("%sShard %d resuming in %s, %d uncommitted addresses removed%n", label, i, range,
+					removed);
+			remaining.add(range);
+		}
+		return remaining;
+	}
+
+	/** Options that apply to every job of a run. */
+	private record JobSettings(String sinkSpec, int shardCount, int maxRows, boolean delta, String versionColumn,
+			boolean dedup, int dedupMemoryEntries, Path dedupSpillDir, int writeBehindDepth, int queueCapacity,
+			Duration progressInterval, Duration batchTarget, int readMin, int readMax, int writeMin, int writeMax) {}
+
+	private static String idSequence(String table) {
+		return table + "_ID_SEQ";
+	}
+
+	private static AddressSink openSink(String spec, String table, SqlClient client) throws Exception {
+		if (spec.startsWith("file:")) {
+			Path file = Path.of(spec.substring("file:".length()));
+			System.out.printf("Writing addresses to staging file %s%n", file);
+			return StagingFileAddressSink.open(file);
+		}
+
+		IdBlockAllocator ids = new IdBlockAllocator(idSequence(table), ID_BLOCK_SIZE, client);
+		return switch (spec) {
+		case "jdbc" -> new StructuredAddressBatchWriter(table, ids, client);
+		case "bulk" -> new BulkCopyAddressSink(table, ids, client);
+		default -> throw new IllegalArgumentException("Unknown SINK " + spec + ", expected jdbc, bulk or file:<path>");
+		};
+	}
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.allanbrunner.addressFormatter.db.IdBlockAllocator;
+import dev.allanbrunner.addressFormatter.util.SpillableHashIndex;
+
+/**
+ * Assigns one {@code ID_FPR_PAYREL} per distinct written address. The key is a 128-bit hash of the columns an
+ * address is written with, normalized the way the sinks normalize them, so two rows share an id only if they would
+ * have been written identically. Only the first row with a given key is written; every row is linked to the id.
+ */
+public final class AddressDeduplicator implements AutoCloseable {
+	private final IdBlockAllocator ids;
+	private final SpillableHashIndex index;
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder duplicates = new LongAdder();
+	private final Set<Long> rejected = ConcurrentHashMap.newKeySet();
+
+	public AddressDeduplicator(IdBlockAllocator ids, long maxInMemoryEntries, Path spillDirectory) {
+		this.ids = Objects.requireNonNull(ids, "ids");
+		this.index = new SpillableHashIndex(maxInMemoryEntries, spillDirectory);
+	}
+
+	/** Rows to write with their ids, and the address id of every row of {@code chunk} in order. */
+	public record Assignment(List<StructuredAddress> distinct, long[] distinctIds, long[] addressIds) {}
+
+	public Assignment assign(List<StructuredAddress> chunk) throws SQLException {
+		List<StructuredAddress> distinct = new ArrayList<>(chunk.size());
+		long[] distinctIds = new long[chunk.size()];
+		long[] addressIds = new long[chunk.size()];
+		long[] key = new long[2];
+		for (int i = 0; i < chunk.size(); i++) {
+			StructuredAddress addr = chunk.get(i);
+			hash(addr, key);
+			long id = index.get(key[0], key[1]);
+			if (id == SpillableHashIndex.ABSENT) {
+				long candidate = ids.next();
+				id = index.putIfAbsent(key[0], key[1], candidate);
+				if (id == SpillableHashIndex.ABSENT) {
+					id = candidate;
+					distinctIds[distinct.size()] = id;
+					distinct.add(addr);
+				} else {
+					duplicates.increment();
+				}
+			} else {
+				duplicates.increment();
+			}
+			addressIds[i] = id;
+		}
+		rows.add(chunk.size());
+		return new Assignment(distinct, Arrays.copyOf(distinctIds, distinct.size()), addressIds);
+	}
+
+	/**
+	 * Marks an address id whose row could not be written. The key keeps pointing at it, so later rows with the same
+	 * address are not written again, since they would fail the same way, and are left unlinked.
+	 */
+	public void reject(long id) {
+		rejected.add(id);
+	}
+
+	public boolean isRejected(long id) {
+		return !rejected.isEmpty() && rejected.contains(id);
+	}
+
+	public String stats() {
+		return "rows=%d, duplicates=%d, distinct=%d, rejected=%d, spilled segments=%d".formatted(rows.sum(),
+				duplicates.sum(), index.size(), rejected.size(), index.spilledSegments());
+	}
+
+	@Override
+	public void close() throws IOException {
+		index.close();
+	}
+
+	/**
+	 * The values {@code addr} is written with that decide whether two addresses are the same, trimmed and with absent
+	 * ones as {@code ""}: name, both complements, street or PO box, house number, postal code, city and country.
+	 */
+	static String[] fields(StructuredAddress addr) {
+		String[] fields = { addr.name(), addr.compl1(), addr.compl2(), addr.streetOrPoBox(), addr.houseNumber(),
+				Integer.toString(addr.postal().code()), addr.city(), addr.country() };
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = fields[i] == null ? "" : fields[i].trim();
+		}
+		return fields;
+	}
+
+	static void hash(StructuredAddress addr, long[] key) {
+		long h1 = 0xcbf29ce484222325L;
+		long h2 = 0x9e3779b97f4a7c15L;
+		for (String value : fields(addr)) {
+			// Each value is preceded by its length, so no text can shift across a field boundary
+			h1 = (h1 ^ value.length()) * 0x100000001b3L;
+			h2 = (h2 + value.length()) * 0xc2b2ae3d27d4eb4fL;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				h1 = (h1 ^ c) * 0x100000001b3L;
+				h2 = (h2 + c) * 0xc2b2ae3d27d4eb4fL;
+			}
+		}
+		key[0] = mix(h1);
+		key[1] = mix(h2 ^ h1);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
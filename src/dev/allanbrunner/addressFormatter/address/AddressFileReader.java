@@ -0,0 +1,483 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads {@code id,line1..line6} records from a CSV (RFC 4180) or JSONL export. The file is memory-mapped and cut into
+ * chunks at record boundaries; chunks are parsed on a pool of worker threads a few chunks ahead of the consumer, and
+ * records are returned in file order.
+ *
+ * <p>
+ * CSV files start with a header line unless told otherwise, and may hold fewer than six address columns. JSONL lines
+ * are flat objects with an {@code id} and {@code line1} to {@code line6}; other keys are ignored.
+ */
+public final class AddressFileReader implements Iterator<UnstructuredAddress>, AutoCloseable {
+	public enum Format {
+		CSV, JSONL;
+
+		public static Format of(Path file) {
+			String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+			return name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSONL : CSV;
+		}
+	}
+
+	private static final int CHUNK_BYTES = 8 << 20;
+	private static final int COLUMNS = 7;
+
+	private final Path file;
+	private final Format format;
+	private final boolean header;
+	private final FileChannel channel;
+	private final long size;
+	private final ExecutorService parsers;
+	private final int prefetch;
+	private final Deque<Future<List<UnstructuredAddress>>> pending = new ArrayDeque<>();
+
+	private long nextChunk;
+	private List<UnstructuredAddress> current = List.of();
+	private int index;
+
+	private AddressFileReader(Path file, Format format, boolean header, int threads, FileChannel channel)
+			throws IOException {
+		this.file = file;
+		this.format = format;
+		this.header = header;
+		this.channel = channel;
+		this.size = channel.size();
+		this.prefetch = threads * 2;
+		AtomicInteger threadIndex = new AtomicInteger();
+		this.parsers = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "file-parser-" + threadIndex.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.nextChunk = hasBom() ? 3 : 0;
+	}
+
+	public static AddressFileReader open(Path file, boolean header, int threads) throws IOException {
+		return open(file, Format.of(file), header, threads);
+	}
+
+	public static AddressFileReader open(Path file, Format format, boolean header, int threads) throws IOException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		return new AddressFileReader(file, format, header, threads, FileChannel.open(file, StandardOpenOption.READ));
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (index >= current.size()) {
+			schedule();
+			Future<List<UnstructuredAddress>> next = pending.poll();
+			if (next == null) {
+				return false;
+			}
+			try {
+				current = next.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while reading " + file, e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Failed to read " + file, e.getCause());
+			}
+			index = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public UnstructuredAddress next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.get(index++);
+	}
+
+	@Override
+	public void close() throws IOException {
+		parsers.shutdownNow();
+		channel.close();
+	}
+
+	private void schedule() {
+		try {
+			while (pending.size() < prefetch && nextChunk < size) {
+				long start = nextChunk;
+				ByteBuffer chunk = mapChunk(start);
+				nextChunk = start + chunk.remaining();
+				boolean skipHeader = header && format == Format.CSV && start <= 3;
+				pending.add(parsers.submit(() -> {
+					// Copied on the parser thread, so this one only looks for the record boundary
+					byte[] bytes = new byte[chunk.remaining()];
+					chunk.get(bytes);
+					return format == Format.CSV ? parseCsv(bytes, start, skipHeader) : parseJsonl(bytes, start);
+				}));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read " + file, e);
+		}
+	}
+
+	/** Maps the bytes from {@code start} up to the last record boundary in a chunk, growing it for long records. */
+	private ByteBuffer mapChunk(long start) throws IOException {
+		int length = (int) Math.min(CHUNK_BYTES, size - start);
+		while (true) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			if (start + length == size) {
+				return mapped;
+			}
+			int end = format == Format.CSV ? lastCsvBoundary(mapped, length) : lastLineBoundary(mapped, length);
+			if (end > 0) {
+				return mapped.limit(end);
+			}
+			length = (int) Math.min((long) length * 2, size - start);
+		}
+	}
+
+	private boolean hasBom() throws IOException {
+		if (size < 3) {
+			return false;
+		}
+		MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, 3);
+		return (mapped.get(0) & 0xFF) == 0xEF && (mapped.get(1) & 0xFF) == 0xBB && (mapped.get(2) & 0xFF) == 0xBF;
+	}
+
+	private static int lastLineBoundary(ByteBuffer bytes, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (bytes.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Line breaks inside quoted fields do not end a record, so the quote state has to be followed from the start. Like
+	 * {@link #parseCsv}, only a quote at the start of a field opens a quoted field; elsewhere it is a plain character.
+	 */
+	private static int lastCsvBoundary(ByteBuffer bytes, int length) {
+		boolean quoted = false;
+		boolean fieldStart = true;
+		int boundary = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = bytes.get(i);
+			if (quoted) {
+				if (b == '"') {
+					if (i + 1 < length && bytes.get(i + 1) == '"') {
+						i++;
+					} else {
+						quoted = false;
+					}
+				}
+			} else if (b == '"' && fieldStart) {
+				quoted = true;
+				fieldStart = false;
+			} else if (b == '\n') {
+				boundary = i + 1;
+				fieldStart = true;
+			} else {
+				fieldStart = b == ',';
+			}
+		}
+		return boundary;
+	}
+
+	private List<UnstructuredAddress> parseCsv(byte[] bytes, long offset, boolean skipHeader) throws IOException {
+		List<UnstructuredAddress> records = new ArrayList<>(bytes.length / 64);
+		List<String> row = new ArrayList<>(COLUMNS);
+		byte[] scratch = null;
+		int pos = 0;
+		boolean first = true;
+		while (pos < bytes.length) {
+			int recordStart = pos;
+			row.clear();
+			while (true) {
+				String value;
+				if (pos < bytes.length && bytes[pos] == '"') {
+					int start = ++pos;
+					int escapes = 0;
+					while (true) {
+						if (pos >= bytes.length) {
+							throw error(offset + recordStart, "unterminated quoted field");
+						}
+						if (bytes[pos] == '"') {
+							if (pos + 1 < bytes.length && bytes[pos + 1] == '"') {
+								escapes++;
+								pos += 2;
+								continue;
+							}
+							break;
+						}
+						pos++;
+					}
+					if (escapes == 0) {
+						value = new String(bytes, start, pos - start, StandardCharsets.UTF_8);
+					} else {
+						if (scratch == null || scratch.length < pos - start) {
+							scratch = new byte[Math.max(pos - start, 256)];
+						}
+						int length = 0;
+						for (int i = start; i < pos; i++) {
+							scratch[length++] = bytes[i];
+							if (bytes[i] == '"') {
+								i++;
+							}
+						}
+						value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+					}
+					pos++;
+				} else {
+					int start = pos;
+					while (pos < bytes.length && bytes[pos] != ',' && bytes[pos] != '\n') {
+						pos++;
+					}
+					int end = pos > start && bytes[pos - 1] == '\r' ? pos - 1 : pos;
+					value = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+				}
+				row.add(value);
+
+				if (pos < bytes.length && bytes[pos] == '\r') {
+					pos++;
+				}
+				if (pos >= bytes.length || bytes[pos] == '\n') {
+					pos++;
+					break;
+				}
+				if (bytes[pos] != ',') {
+					throw error(offset + recordStart, "unexpected character after quoted field");
+				}
+				pos++;
+			}
+
+			if (first && skipHeader) {
+				first = false;
+				continue;
+			}
+			first = false;
+			if (row.size() == 1 && row.get(0).isEmpty()) {
+				continue;
+			}
+			if (row.size() > COLUMNS) {
+				throw error(offset + recordStart, "expected at most " + COLUMNS + " columns, found " + row.size());
+			}
+			records.add(toRecord(row, offset + recordStart));
+		}
+		return records;
+	}
+
+	private List<UnstructuredAddress> parseJsonl(byte[] bytes, long offset) throws IOException {
+		List<UnstructuredAddress> records = new ArrayList<>(bytes.length / 128);
+		JsonLine line = new JsonLine(bytes, offset);
+		int pos = 0;
+		while (pos < bytes.length) {
+			int end = pos;
+			while (end < bytes.length && bytes[end] != '\n') {
+				end++;
+			}
+			UnstructuredAddress record = line.parse(pos, end);
+			if (record != null) {
+				records.add(record);
+			}
+			pos = end + 1;
+		}
+		return records;
+	}
+
+	private IOException error(long offset, String message) {
+		return new IOException(file + " at byte " + offset + ": " + message);
+	}
+
+	private UnstructuredAddress toRecord(List<String> row, long offset) throws IOException {
+		while (row.size() < COLUMNS) {
+			row.add(null);
+		}
+		if (row.get(0) == null || row.get(0).isBlank()) {
+			throw error(offset, "record without id");
+		}
+		return AddressFormatterService.toUnstructured(row);
+	}
+
+	/** Parser for one flat JSON object per line; values may be strings, numbers, booleans or null. */
+	private final class JsonLine {
+		private final byte[] bytes;
+		private final long offset;
+		private final List<String> row = new ArrayList<>(COLUMNS);
+		private final StringBuilder text = new StringBuilder(64);
+		private int pos;
+		private int end;
+		private int start;
+
+		JsonLine(byte[] bytes, long offset) {
+			this.bytes = bytes;
+			this.offset = offset;
+		}
+
+		UnstructuredAddress parse(int from, int to) throws IOException {
+			start = from;
+			pos = from;
+			end = to;
+			skipWhitespace();
+			if (pos == end) {
+				return null;
+			}
+			expect('{');
+			row.clear();
+			for (int i = 0; i < COLUMNS; i++) {
+				row.add(null);
+			}
+
+			skipWhitespace();
+			if (peek() == '}') {
+				pos++;
+			} else {
+				while (true) {
+					skipWhitespace();
+					String key = string();
+					skipWhitespace();
+					expect(':');
+					skipWhitespace();
+					String value = value();
+					int column = column(key);
+					if (column >= 0) {
+						row.set(column, value);
+					}
+					skipWhitespace();
+					if (peek() == ',') {
+						pos++;
+						continue;
+					}
+					expect('}');
+					break;
+				}
+			}
+			skipWhitespace();
+			if (pos != end) {
+				throw error(offset + start, "unexpected content after object");
+			}
+			return toRecord(row, offset + start);
+		}
+
+		private int column(String key) {
+			if (key.equals("id")) {
+				return 0;
+			}
+			if (key.length() == 5 && key.startsWith("line") && key.charAt(4) >= '1' && key.charAt(4) <= '6') {
+				return key.charAt(4) - '0';
+			}
+			return -1;
+		}
+
+		private String value() throws IOException {
+			int c = peek();
+			if (c == '"') {
+				return string();
+			}
+			if (c == '{' || c == '[') {
+				throw error(offset + start, "nested values are not supported");
+			}
+			int from = pos;
+			while (pos < end && bytes[pos] != ',' && bytes[pos] != '}' && bytes[pos] != ' ' && bytes[pos] != '\t'
+					&& bytes[pos] != '\r') {
+				pos++;
+			}
+			String literal = new String(bytes, from, pos - from, StandardCharsets.US_ASCII);
+			if (literal.isEmpty()) {
+				throw error(offset + start, "missing value");
+			}
+			return literal.equals("null") ? null : literal;
+		}
+
+		private String string() throws IOException {
+			expect('"');
+			int from = pos;
+			while (pos < end && bytes[pos] != '"' && bytes[pos] != '\\') {
+				pos++;
+			}
+			if (pos < end && bytes[pos] == '"') {
+				return new String(bytes, from, pos++ - from, StandardCharsets.UTF_8);
+			}
+
+			text.setLength(0);
+			text.append(new String(bytes, from, pos - from, StandardCharsets.UTF_8));
+			while (true) {
+				if (pos >= end) {
+					throw error(offset + start, "unterminated string");
+				}
+				byte b = bytes[pos];
+				if (b == '"') {
+					pos++;
+					return text.toString();
+				}
+				if (b != '\\') {
+					int run = pos;
+					while (pos < end && bytes[pos] != '"' && bytes[pos] != '\\') {
+						pos++;
+					}
+					text.append(new String(bytes, run, pos - run, StandardCharsets.UTF_8));
+					continue;
+				}
+				if (pos + 1 >= end) {
+					throw error(offset + start, "unterminated escape");
+				}
+				byte escaped = bytes[pos + 1];
+				pos += 2;
+				switch (escaped) {
+				case '"', '\\', '/' -> text.append((char) escaped);
+				case 'b' -> text.append('\b');
+				case 'f' -> text.append('\f');
+				case 'n' -> text.append('\n');
+				case 'r' -> text.append('\r');
+				case 't' -> text.append('\t');
+				case 'u' -> {
+					if (pos + 4 > end) {
+						throw error(offset + start, "truncated unicode escape");
+					}
+					try {
+						text.append((char) Integer.parseInt(new String(bytes, pos, 4, StandardCharsets.US_ASCII), 16));
+					} catch (NumberFormatException e) {
+						throw error(offset + start, "invalid unicode escape");
+					}
+					pos += 4;
+				}
+				default -> throw error(offset + start, "invalid escape");
+				}
+			}
+		}
+
+		private void expect(char c) throws IOException {
+			if (peek() != c) {
+				throw error(offset + start, "expected '" + c + "'");
+			}
+			pos++;
+		}
+
+		private int peek() {
+			return pos < end ? bytes[pos] : -1;
+		}
+
+		private void skipWhitespace() {
+			while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\r')) {
+				pos++;
+			}
+		}
+	}
+}
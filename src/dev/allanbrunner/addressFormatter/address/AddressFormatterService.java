@@ -2,26 +2,98 @@ package dev.allanbrunner.addressFormatter.address;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import dev.allanbrunner.addressFormatter.db.AdaptiveBatchSize;
+import dev.allanbrunner.addressFormatter.db.RowMapper;
 import dev.allanbrunner.addressFormatter.db.SqlClient;
+import dev.allanbrunner.addressFormatter.util.StringInterner;
 
 public final class AddressFormatterService {
-	private static final Pattern TITLE_RE = Pattern.compile("(?i)^\\s*(FRAU|HERR|MADAME|MONSIEUR|MR|MS|M|MME)\\s*$");
-	private static final Pattern ZIP_RE = Pattern.compile("^(\\d{4})(?:[-\\s]?(\\d{2}))?$");
-	private static final Pattern HOUSE_RE = Pattern.compile(
-			"(?ix)^\\s*(?<street>.+?)\\s*(?<number>[1-9]\\d{0,3}(?:(?:(?:bis|ter|quater|quinquies)|[A-Za-z]))?(?:/[1-9]\\d{0,3})?)\\s*$");
-	private static final Pattern POSTAL_BOX_RE = Pattern
-			.compile("(?ix)^\\s*(?:P\\.O\\.\\s*Box|Postfach|Case\\s+Postale|Casella\\s+Postale|CP)\\s+(\\d{1,4})\\s*$");
+	private static final AddressLine EMPTY_STREET = AddressLine.street("", "");
+	private static final ThreadLocal<String[]> LINE_SCRATCH = ThreadLocal.withInitial(() -> new String[6]);
+	// Titles, cities and countries repeat across millions of rows; share one instance per distinct value
+	private static final StringInterner TITLES = new StringInterner(1 << 10);
+	private static final StringInterner CITIES = new StringInterner(1 << 14);
+	private static final StringInterner COUNTRIES = new StringInterner(1 << 10);
+
+	private static volatile NameSplitter nameSplitter = NameSplitter.DEFAULT;
 
 	private AddressFormatterService() {}
 
+	/** Replaces the name splitter used by {@link #format}; call it before formatting starts. */
+	public static void useNameSplitter(NameSplitter splitter) {
+		nameSplitter = Objects.requireNonNull(splitter, "splitter");
+	}
+
 	public static List<UnstructuredAddress> getUnstructuredAddresses(String table, String colId, String[] colLines,
 			SqlClient client) throws SQLException {
+		String query = "SELECT " + selectList(colId, colLines) + " FROM " + table;
+		List<UnstructuredAddress> result = new ArrayList<>();
+		client.query(query, new Object[0], unstructuredRows(), result::add);
+		return result;
+	}
+
+	public static Stream<UnstructuredAddress> streamUnstructuredAddresses(String table, String colId,
+			String[] colLines, int pageSize, SqlClient client) {
+		return streamUnstructuredAddresses(table, colId, colLines, pageSize, KeyRange.ALL, client);
+	}
+
+	public static Stream<UnstructuredAddress> streamUnstructuredAddresses(String table, String colId,
+			String[] colLines, int pageSize, String startAfter, SqlClient client) {
+		return streamUnstructuredAddresses(table, colId, colLines, pageSize, new KeyRange(startAfter, null), client);
+	}
+
+	public static Stream<UnstructuredAddress> streamUnstructuredAddresses(String table, String colId,
+			String[] colLines, int pageSize, KeyRange range, SqlClient client) {
+		return streamUnstructuredAddresses(table, colId, colLines, pageSize, range, null, client);
+	}
+
+	public static Stream<UnstructuredAddress> streamUnstructuredAddresses(String table, String colId,
+			String[] colLines, int pageSize, KeyRange range, SourceFilter filter, SqlClient client) {
+		return streamUnstructuredAddresses(table, colId, colLines, AdaptiveBatchSize.fixed("read", pageSize), range,
+				filter, client);
+	}
+
+	public static Stream<UnstructuredAddress> streamUnstructuredAddresses(String table, String colId,
+			String[] colLines, AdaptiveBatchSize pageSize, KeyRange range, SourceFilter filter, SqlClient client) {
+		UnstructuredAddressReader reader = new UnstructuredAddressReader(table, colId, colLines, pageSize.current(),
+				client).pageSize(pageSize).range(range).where(filter);
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Splits the keys of {@code table} into at most {@code count} contiguous ranges holding about the same number of
+	 * rows. The first range is open below and the last one open above, so together they cover every key.
+	 */
+	public static List<KeyRange> partitionKeys(String table, String colId, int count, SqlClient client)
+			throws SQLException {
+		String sql = ("""
+				SELECT MAX(k.id)
+				FROM (SELECT %s AS id, NTILE(%d) OVER (ORDER BY %s) AS part FROM %s) k
+				GROUP BY k.part
+				ORDER BY k.part
+				""").formatted(colId, count, colId, table);
+		List<List<String>> rows = client.executeQuery(sql, false);
+
+		List<KeyRange> ranges = new ArrayList<>(rows.size());
+		String after = null;
+		for (int i = 0; i < rows.size(); i++) {
+			String upTo = i == rows.size() - 1 ? null : rows.get(i).get(0);
+			ranges.add(new KeyRange(after, upTo));
+			after = upTo;
+		}
+		return ranges.isEmpty() ? List.of(KeyRange.ALL) : ranges;
+	}
+
+	static String selectList(String colId, String[] colLines) {
 		List<String> selectItems = new ArrayList<>(7);
 		selectItems.add(colId);
 		for (int idx = 0; idx < 6; idx++) {
@@ -31,216 +103,167 @@ public final class AddressFormatterService {
 				selectItems.add("'' AS line" + (idx + 1));
 			}
 		}
+		return String.join(", ", selectItems);
+	}
 
-		String query = "SELECT " + String.join(", ", selectItems) + " FROM " + table;
-		List<List<String>> rows = client.executeQuery(query, false);
+	static UnstructuredAddress toUnstructured(List<String> row) {
+		String id = Objects.requireNonNull(row.get(0), "No ID retrieved").trim();
+		String[] lines = new String[6];
+		for (int i = 0; i < 6; i++) {
+			lines[i] = clean(row.get(i + 1));
+		}
+		return new UnstructuredAddress(id, lines);
+	}
 
-		List<UnstructuredAddress> result = new ArrayList<>(rows.size());
-		for (List<String> row : rows) {
-			String id = Objects.requireNonNull(row.get(0), "No ID retrieved").trim();
-			String[] lines = new String[6];
+	/**
+	 * Maps rows selected with {@link #selectList} straight from the result set. The returned mapper reuses one line
+	 * buffer, so it must stay with a single query at a time.
+	 */
+	static RowMapper<UnstructuredAddress> unstructuredRows() {
+		String[] lines = new String[6];
+		return row -> {
+			String id = Objects.requireNonNull(row.getString(1), "No ID retrieved").trim();
 			for (int i = 0; i < 6; i++) {
-				lines[i] = clean(row.get(i + 1));
+				lines[i] = clean(row.getString(i + 2));
 			}
-			result.add(new UnstructuredAddress(id, lines));
-		}
-		return result;
+			return new UnstructuredAddress(id, lines);
+		};
 	}
 
 	public static StructuredAddress format(UnstructuredAddress raw) {
-		List<String> lines = raw.lines().stream().filter(Objects::nonNull).map(String::trim).filter(s -> !s.isEmpty())
-				.collect(Collectors.toList());
+		String[] lines = LINE_SCRATCH.get();
+		try {
+			List<String> rawLines = raw.lines();
+			int count = 0;
+			for (int i = 0; i < rawLines.size(); i++) {
+				String line = rawLines.get(i);
+				if (line != null) {
+					String trimmed = line.trim();
+					if (!trimmed.isEmpty()) {
+						lines[count++] = trimmed;
+					}
+				}
+			}
+			return format(raw.id(), lines, count);
+		} finally {
+			Arrays.fill(lines, null);
+		}
+	}
+
+	public static StructuredAddress format(UnstructuredAddress raw, PostalCodeIndex postalCodes) {
+		return postalCodes.validate(format(raw));
+	}
 
+	private static StructuredAddress format(String id, String[] lines, int count) {
 		int lineOffset = 0;
 		String title = null;
 
-		if (!lines.isEmpty() && TITLE_RE.matcher(lines.get(0)).matches()) {
-			title = lines.get(0);
+		if (count > 0 && AddressLineClassifier.isTitle(lines[0], 0, lines[0].length())) {
+			title = lines[0];
 			lineOffset += 1;
 		}
 
-		String fullname = lines.size() > lineOffset ? lines.get(lineOffset) : "";
-		String[] nameParts = fullname.split("\\s+");
-		String firstToken = nameParts.length > 0 ? nameParts[0] : "";
-
-		String lastname;
-		String firstname = "";
-		if (TITLE_RE.matcher(firstToken).matches()) {
+		String fullname = count > lineOffset ? lines[lineOffset] : "";
+		int nameLength = fullname.length();
+		int firstEnd = AddressLineClassifier.tokenEnd(fullname, 0, nameLength);
+		int nameStart = 0;
+		if (AddressLineClassifier.isTitle(fullname, 0, firstEnd)) {
 			if (title == null || title.isBlank()) {
-				title = firstToken;
+				title = fullname.substring(0, firstEnd);
 			}
-			lastname = nameParts.length > 1 ? nameParts[1] : "";
-			firstname = nameParts.length > 2 ? nameParts[2] : "";
-		} else {
-			lastname = firstToken;
-			firstname = nameParts.length > 1 ? nameParts[1] : "";
+			nameStart = firstEnd;
 		}
+		long split = nameSplitter.split(fullname, nameStart, nameLength);
+		String lastname = joinTokens(fullname, NameSplitter.lastStart(split), NameSplitter.lastEnd(split));
+		String firstname = joinTokens(fullname, NameSplitter.firstStart(split), NameSplitter.firstEnd(split));
 
 		String compl1 = null;
 		String compl2 = null;
-		AddressLine address = AddressLine.street("", "");
-		PostalCode postal = new PostalCode(0, null);
+		AddressLine address = EMPTY_STREET;
+		int postalCode = 0;
+		int postalSuffix = -1;
 		String city = "";
-		String streetOrPoBox = null;
-
-		int idx = 1 + lineOffset;
-		while (idx < lines.size()) {
-			String line = lines.get(idx);
-			idx += 1;
-			String trimmed = line.trim();
-			String[] localityParts = trimmed.split("\\s+", 2);
-			String localityFirst = localityParts.length > 0 ? localityParts[0] : "";
-
-			if (streetOrPoBox == null) {
-				Matcher poBoxMatcher = POSTAL_BOX_RE.matcher(trimmed);
-				if (poBoxMatcher.matches()) {
-					streetOrPoBox = trimmed;
-					address = AddressLine.poBox(trimmed);
+		boolean streetOrPoBoxFound = false;
+
+		for (int idx = 1 + lineOffset; idx < count; idx++) {
+			String line = lines[idx];
+			int length = line.length();
+
+			if (!streetOrPoBoxFound) {
+				if (AddressLineClassifier.isPoBox(line)) {
+					streetOrPoBoxFound = true;
+					address = AddressLine.poBox(line);
 					continue;
 				}
 
-				Matcher hosueMatcher = HOUSE_RE.matcher(trimmed);
-				if (hosueMatcher.matches()) {
-					String street = hosueMatcher.group("street").trim();
-					String houseNumber = hosueMatcher.group("number").trim();
-					streetOrPoBox = street;
-					address = AddressLine.street(street, houseNumber);
+				int numberStart = AddressLineClassifier.houseNumberStart(line);
+				if (numberStart >= 0) {
+					String street = line.substring(0, AddressLineClassifier.streetEnd(line, numberStart)).trim();
+					streetOrPoBoxFound = true;
+					address = AddressLine.street(street, line.substring(numberStart));
 					continue;
 				}
 			}
 
 			if (city.isEmpty()) {
-				Matcher zipMatcher = ZIP_RE.matcher(localityFirst);
-				if (zipMatcher.matches()) {
-					int code = Integer.parseInt(zipMatcher.group(1));
-					Integer suffix = zipMatcher.group(2) != null ? Integer.parseInt(zipMatcher.group(2)) : null;
-					postal = new PostalCode(code, suffix);
-					city = localityParts.length > 1 ? localityParts[1].trim() : "";
+				int localityEnd = AddressLineClassifier.tokenEnd(line, 0, length);
+				int code = AddressLineClassifier.zipCode(line, 0, localityEnd);
+				if (code >= 0) {
+					postalCode = code;
+					postalSuffix = AddressLineClassifier.zipSuffix(line, 0, localityEnd);
+					int cityStart = AddressLineClassifier.skipWhitespace(line, localityEnd, length);
+					city = line.substring(cityStart).trim();
 					continue;
 				}
 			}
 
 			if (compl1 == null) {
-				compl1 = trimmed;
+				compl1 = line;
 				lineOffset += 1;
 			} else if (compl2 == null) {
-				compl2 = trimmed;
+				compl2 = line;
 				lineOffset += 1;
 			}
 		}
 
-		String country;
 		int countryIndex = 3 + lineOffset;
-		if (countryIndex < lines.size()) {
-			country = lines.get(countryIndex).trim();
-		} else {
-			country = "CH";
-		}
-		if (country.isEmpty()) {
-			country = "CH";
-		}
+		String country = countryIndex < count ? lines[countryIndex] : "CH";
 
-		String titleValue = normalizeEmpty(title);
+		String titleValue = TITLES.intern(normalizeEmpty(title));
 		String lastnameValue = normalizeEmpty(lastname);
 		String firstnameValue = normalizeEmpty(firstname);
-		String nameValue = normalizeEmpty((lastname + " " + firstname).trim());
-		String compl1Value = normalizeEmpty(compl1);
-		String compl2Value = normalizeEmpty(compl2);
-		String cityValue = city == null ? "" : city;
+		String nameValue = lastname.isEmpty() ? firstnameValue
+				: firstname.isEmpty() ? lastnameValue : normalizeEmpty(lastname + " " + firstname);
+		PostalCode postal = PostalCode.of(postalCode, postalSuffix < 0 ? null : postalSuffix);
 
-		return new StructuredAddress(raw.id(), titleValue, nameValue, lastnameValue, firstnameValue, compl1Value,
-				compl2Value, address, postal, cityValue, country);
+		return new StructuredAddress(id, titleValue, nameValue, lastnameValue, firstnameValue, compl1, compl2, address,
+				postal, CITIES.intern(city), COUNTRIES.intern(country));
 	}
 
 	public static long saveStructuredAddress(String table, StructuredAddress addr, SqlClient client)
 			throws SQLException {
-		String street = null;
-		String houseNumber = null;
-		String poBox = null;
-		if (addr.address() instanceof AddressLine.Street streetLine) {
-			street = streetLine.street();
-			houseNumber = streetLine.houseNumber();
-		} else if (addr.address() instanceof AddressLine.PoBox poBoxLine) {
-			poBox = poBoxLine.boxNumber();
-		}
+		return client.executeNonQuery(insertStatement(table), insertParameters(addr));
+	}
 
+	/** Parameterized single-row INSERT; bind it with {@link #insertParameters}. */
+	public static String insertStatement(String table) {
 		String nextIdExpr = "(SELECT ISNULL(MAX(t.ID_FPR_PAYREL), 0)+1 FROM " + table + " t)";
 
-		String sql = ("""
-					INSERT INTO %s (
-				                ID_FPR_PAYREL,
-				                FPR_PAYEMENT_DOMAIN,
-				                FPR_ACCOUNT_OWNER_NAME,
-				                FPR_ACCOUNT_OWNER_ADRESS_LINE1,
-				                FPR_ACCOUNT_OWNER_ADRESS_LINE2,
-				                FPR_STREET,
-				                FPR_BUILDING_NUMBER,
-				                FPR_POST_CODE,
-				                FPR_TOWN_NAME,
-				                FPR_ACCOUNT_OWNER_ADDRESS_COUNTRY,
-				                FPR_ACCOUNT_TYPE,
-				                FPR_ACCOUNT_NO,
-				                FPR_CURRENCY,
-				                FPR_PAYMENT_POOL,
-				                FPR_ACCOUNT_NO_REF,
-				                FPR_VALIDITY_START,
-				                FPR_VALIDITY_END,
-				                FPR_STATE,
-				                FPR_SOURCE,
-				                FPR_VALID,
-				                FPR_USR_LOG_I,
-				                FPR_DTE_LOG_I,
-				                FPR_USR_LOG_U,
-				                FPR_DTE_LOG_U,
-				                OLD_TBL_ID,
-				                OLD_ID_ADRESSE,
-				                RIP_PERSON_ID,
-				                RIP_PERSON_BPC_ID,
-				                PAC_PAYEMENT_ADRESS_ID,
-				                PAC_VERSION_ADR
-				            )
-				            SELECT
-				                %s,
-				                'FCF',
-				                %s,
-				                %s,
-				                %s,
-				                %s,
-				                %s,
-				                %s,
-				                %s,
-				                %s,
-				                'TRAN_CH',
-				                'CH00',
-				                'CHF',
-				                0,
-				                NULL,
-				                GETDATE(),
-				                NULL,
-				                'ACTIVE',
-				                'OTH',
-				                1,
-				                'FORMAT',
-				                GETDATE(),
-				                'FORMAT',
-				                GETDATE(),
-				                %s,
-				                NULL,
-				                0,
-				                0,
-				                NULL,
-				                NULL
-				""").formatted(table, nextIdExpr, SqlClient.nullableQuoted(addr.name()),
-				SqlClient.nullableQuoted(addr.compl1()), SqlClient.nullableQuoted(addr.compl2()),
-				SqlClient.nullableQuoted(poBox != null ? poBox : street), SqlClient.nullableQuoted(houseNumber),
-				addr.postal().code(), SqlClient.nullableQuoted(addr.city()), SqlClient.nullableQuoted(addr.country()),
-				SqlClient.nullableQuoted(addr.id()));
-		try {
-			return client.executeNonQuery(sql);
-		} catch (Exception e) {
-			System.out.println("An error happened: " + e + "\nRequest: " + sql);
-			return -1;
-		}
+		return SqlClient.addressInsertInto(table) + """
+				SELECT
+					%s, 'FCF', ?, ?, ?, ?, ?, ?, ?, ?,
+					'TRAN_CH', 'CH00', 'CHF', 0, NULL,
+					GETDATE(), NULL, 'ACTIVE', 'OTH', 1,
+					'FORMAT', GETDATE(), 'FORMAT', GETDATE(),
+					?, NULL, 0, 0, NULL, NULL
+				""".formatted(nextIdExpr);
+	}
+
+	public static Object[] insertParameters(StructuredAddress addr) {
+		return new Object[] { SqlClient.nullable(addr.name()), SqlClient.nullable(addr.compl1()),
+				SqlClient.nullable(addr.compl2()), SqlClient.nullable(addr.streetOrPoBox()),
+				SqlClient.nullable(addr.houseNumber()), addr.postal().code(), SqlClient.nullable(addr.city()),
+				SqlClient.nullable(addr.country()), SqlClient.nullable(addr.id()) };
 	}
 
 	public static long updateAddrPayId(String table, String idField, String idRefField, String refTable,
@@ -250,12 +273,59 @@ public final class AddressFormatterService {
 				SET %s = (
 					SELECT ad.%s
 					FROM %s ad
-					WHERE ad.%s = '%s'
+					WHERE ad.%s = CAST(? AS varchar(64))
 				)
-				WHERE %s = '%s'
-				""").formatted(table, idRefField, refIdField, refTable, refLinkField, SqlClient.sqlQuote(refMainId),
-				idField, SqlClient.sqlQuote(refMainId));
-		return client.executeNonQuery(sql);
+				WHERE %s = CAST(? AS varchar(64))
+				""").formatted(table, idRefField, refIdField, refTable, refLinkField, idField);
+		return client.executeNonQuery(sql, refMainId, refMainId);
+	}
+
+	public static long deleteAddressesAfter(String table, String refLinkField, String sourceTable, String sourceId,
+			String afterId, SqlClient client) throws SQLException {
+		return deleteAddressesIn(table, refLinkField, sourceTable, sourceId, new KeyRange(afterId, null), client);
+	}
+
+	public static long deleteAddressesIn(String table, String refLinkField, String sourceTable, String sourceId,
+			KeyRange range, SqlClient client) throws SQLException {
+		List<String> conditions = new ArrayList<>(2);
+		List<Object> params = new ArrayList<>(2);
+		if (range.after() != null) {
+			conditions.add("s." + sourceId + " > CAST(? AS varchar(64))");
+			params.add(range.after());
+		}
+		if (range.upTo() != null) {
+			conditions.add("s." + sourceId + " <= CAST(? AS varchar(64))");
+			params.add(range.upTo());
+		}
+		String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+		String sql = ("""
+				DELETE ad
+				FROM %s ad
+				JOIN %s s ON ad.%s = s.%s
+				%s
+				""").formatted(table, sourceTable, refLinkField, sourceId, where);
+		return client.executeNonQuery(sql, params.toArray());
+	}
+
+	/** The tokens of {@code s} in {@code [from, to)} joined by single spaces; a plain substring if they already are. */
+	private static String joinTokens(String s, int from, int to) {
+		int pos = AddressLineClassifier.skipWhitespace(s, from, to);
+		int end = AddressLineClassifier.tokenEnd(s, pos, to);
+		int next = AddressLineClassifier.skipWhitespace(s, end, to);
+		while (next < to && next == end + 1 && s.charAt(end) == ' ') {
+			end = AddressLineClassifier.tokenEnd(s, next, to);
+			next = AddressLineClassifier.skipWhitespace(s, end, to);
+		}
+		if (next >= to) {
+			return s.substring(pos, end);
+		}
+		StringBuilder joined = new StringBuilder(to - pos).append(s, pos, end);
+		while (next < to) {
+			end = AddressLineClassifier.tokenEnd(s, next, to);
+			joined.append(' ').append(s, next, end);
+			next = AddressLineClassifier.skipWhitespace(s, end, to);
+		}
+		return joined.toString();
 	}
 
 	private static String clean(String value) {
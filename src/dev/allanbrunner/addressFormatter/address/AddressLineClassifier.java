@@ -0,0 +1,233 @@
+package dev.allanbrunner.addressFormatter.address;
+
+/**
+ * Hand-written matchers for the address line shapes {@link AddressFormatterService#format} recognises. Each method
+ * works on index ranges of the line and mirrors the regular expression noted on it, including its ASCII-only case
+ * folding and its definition of {@code \s}.
+ */
+final class AddressLineClassifier {
+	private static final String[] TITLES = { "frau", "herr", "madame", "monsieur", "mr", "ms", "m", "mme" };
+	private static final String[] NUMBER_SUFFIXES = { "bis", "ter", "quater", "quinquies" };
+	private static final int MAX_HOUSE_NUMBER_LENGTH = 4 + 9 + 1 + 4;
+
+	private AddressLineClassifier() {}
+
+	/** {@code (?i)^\s*(FRAU|HERR|MADAME|MONSIEUR|MR|MS|M|MME)\s*$} over {@code [from, to)}. */
+	static boolean isTitle(String s, int from, int to) {
+		from = skipWhitespace(s, from, to);
+		while (to > from && isWhitespace(s.charAt(to - 1))) {
+			to--;
+		}
+		for (String title : TITLES) {
+			if (regionEqualsIgnoreAsciiCase(s, from, to, title)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * {@code (?ix)^\s*(?:P\.O\.\s*Box|Postfach|Case\s+Postale|Casella\s+Postale|CP)\s+(\d{1,4})\s*$}.
+	 */
+	static boolean isPoBox(String s) {
+		int n = s.length();
+		int i = skipWhitespace(s, 0, n);
+		int prefixEnd = poBoxPrefixEnd(s, i, n);
+		if (prefixEnd < 0) {
+			return false;
+		}
+
+		i = skipWhitespace(s, prefixEnd, n);
+		if (i == prefixEnd) {
+			return false;
+		}
+		int digitsEnd = skipDigits(s, i, n);
+		if (digitsEnd == i || digitsEnd - i > 4) {
+			return false;
+		}
+		return skipWhitespace(s, digitsEnd, n) == n;
+	}
+
+	/**
+	 * Start of the {@code number} group of {@code ^\s*(?<street>.+?)\s*(?<number>...)\s*$} on a trimmed line, where
+	 * {@code number} is {@code [1-9]\d{0,3}(?:(?:bis|ter|quater|quinquies)|[A-Za-z])?(?:/[1-9]\d{0,3})?}, or {@code -1}
+	 * if the line does not match. The lazy street group ends at the whitespace run before the leftmost valid number.
+	 */
+	static int houseNumberStart(String s) {
+		int n = s.length();
+		int from = Math.max(1, n - MAX_HOUSE_NUMBER_LENGTH);
+		for (int p = from; p < n; p++) {
+			if (isHouseNumber(s, p, n)) {
+				int streetEnd = streetEnd(s, p);
+				for (int i = 0; i < streetEnd; i++) {
+					if (isLineTerminator(s.charAt(i))) {
+						return -1;
+					}
+				}
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	/** End of the lazy {@code street} group for a number starting at {@code numberStart}. */
+	static int streetEnd(String s, int numberStart) {
+		int end = numberStart;
+		while (end > 1 && isWhitespace(s.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	/** {@code ^(\d{4})(?:[-\s]?(\d{2}))?$} over {@code [from, to)}, returning the code or {@code -1}. */
+	static int zipCode(String s, int from, int to) {
+		int length = to - from;
+		if (length != 4 && length != 6 && length != 7) {
+			return -1;
+		}
+		if (skipDigits(s, from, from + 4) != from + 4) {
+			return -1;
+		}
+		if (length > 4) {
+			int suffixStart = length == 7 ? from + 5 : from + 4;
+			if (length == 7 && s.charAt(from + 4) != '-' && !isWhitespace(s.charAt(from + 4))) {
+				return -1;
+			}
+			if (skipDigits(s, suffixStart, to) != to) {
+				return -1;
+			}
+		}
+		return parseDigits(s, from, from + 4);
+	}
+
+	/** Suffix group of a range accepted by {@link #zipCode}, or {@code -1} if it has none. */
+	static int zipSuffix(String s, int from, int to) {
+		return to - from > 4 ? parseDigits(s, to - 2, to) : -1;
+	}
+
+	/** Index of the first {@code \s} character at or after {@code from}, or {@code to}. */
+	static int tokenEnd(String s, int from, int to) {
+		while (from < to && !isWhitespace(s.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	static int skipWhitespace(String s, int from, int to) {
+		while (from < to && isWhitespace(s.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	/** The {@code \s} character class: {@code [ \t\n\x0B\f\r]}. */
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isHouseNumber(String s, int from, int to) {
+		int i = from;
+		if (i >= to || s.charAt(i) < '1' || s.charAt(i) > '9') {
+			return false;
+		}
+		int digitsEnd = skipDigits(s, i, to);
+		if (digitsEnd - i > 4) {
+			return false;
+		}
+
+		int suffixEnd = digitsEnd;
+		while (suffixEnd < to && s.charAt(suffixEnd) != '/') {
+			suffixEnd++;
+		}
+		if (!isNumberSuffix(s, digitsEnd, suffixEnd)) {
+			return false;
+		}
+		if (suffixEnd == to) {
+			return true;
+		}
+
+		i = suffixEnd + 1;
+		if (i >= to || s.charAt(i) < '1' || s.charAt(i) > '9') {
+			return false;
+		}
+		digitsEnd = skipDigits(s, i, to);
+		return digitsEnd == to && digitsEnd - i <= 4;
+	}
+
+	private static boolean isNumberSuffix(String s, int from, int to) {
+		int length = to - from;
+		if (length == 0) {
+			return true;
+		}
+		if (length == 1) {
+			char c = s.charAt(from);
+			return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+		}
+		for (String suffix : NUMBER_SUFFIXES) {
+			if (regionEqualsIgnoreAsciiCase(s, from, to, suffix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int poBoxPrefixEnd(String s, int from, int to) {
+		int end = matchIgnoreAsciiCase(s, from, to, "p.o.");
+		if (end >= 0) {
+			return matchIgnoreAsciiCase(s, skipWhitespace(s, end, to), to, "box");
+		}
+		end = matchIgnoreAsciiCase(s, from, to, "postfach");
+		if (end >= 0) {
+			return end;
+		}
+		end = matchIgnoreAsciiCase(s, from, to, "casella");
+		if (end < 0) {
+			end = matchIgnoreAsciiCase(s, from, to, "case");
+		}
+		if (end >= 0) {
+			int postale = skipWhitespace(s, end, to);
+			return postale == end ? -1 : matchIgnoreAsciiCase(s, postale, to, "postale");
+		}
+		return matchIgnoreAsciiCase(s, from, to, "cp");
+	}
+
+	private static int matchIgnoreAsciiCase(String s, int from, int to, String lowerWord) {
+		int end = from + lowerWord.length();
+		return end <= to && regionEqualsIgnoreAsciiCase(s, from, end, lowerWord) ? end : -1;
+	}
+
+	private static boolean regionEqualsIgnoreAsciiCase(String s, int from, int to, String lowerWord) {
+		if (to - from != lowerWord.length()) {
+			return false;
+		}
+		for (int i = 0; i < lowerWord.length(); i++) {
+			char c = s.charAt(from + i);
+			if (c >= 'A' && c <= 'Z') {
+				c = (char) (c + ('a' - 'A'));
+			}
+			if (c != lowerWord.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int skipDigits(String s, int from, int to) {
+		while (from < to && s.charAt(from) >= '0' && s.charAt(from) <= '9') {
+			from++;
+		}
+		return from;
+	}
+
+	private static int parseDigits(String s, int from, int to) {
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			value = value * 10 + (s.charAt(i) - '0');
+		}
+		return value;
+	}
+
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+}
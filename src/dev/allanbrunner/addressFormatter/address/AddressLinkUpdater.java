@@ -0,0 +1,111 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+
+import dev.allanbrunner.addressFormatter.db.PooledConnection;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+import dev.allanbrunner.addressFormatter.db.ValuesList;
+
+/**
+ * Set-based replacement for {@link AddressFormatterService#updateAddrPayId}: links a whole chunk of source rows to
+ * their structured address with one {@code MERGE} over a parameterized {@code VALUES} list, a form H2 runs as well.
+ * When a source row has several addresses, as while a delta run replaces one, the newest (highest id) wins.
+ */
+public final class AddressLinkUpdater {
+	private final String table;
+	private final String idField;
+	private final String idRefField;
+	private final String refTable;
+	private final String refIdField;
+	private final String refLinkField;
+	private final SqlClient client;
+
+	public AddressLinkUpdater(String table, String idField, String idRefField, String refTable, String refIdField,
+			String refLinkField, SqlClient client) {
+		this.table = Objects.requireNonNull(table, "table");
+		this.idField = Objects.requireNonNull(idField, "idField");
+		this.idRefField = Objects.requireNonNull(idRefField, "idRefField");
+		this.refTable = Objects.requireNonNull(refTable, "refTable");
+		this.refIdField = Objects.requireNonNull(refIdField, "refIdField");
+		this.refLinkField = Objects.requireNonNull(refLinkField, "refLinkField");
+		this.client = Objects.requireNonNull(client, "client");
+	}
+
+	public long link(List<String> ids) throws SQLException {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+
+		long updated = 0;
+		try (PooledConnection pooled = client.acquire()) {
+			for (int from = 0; from < ids.size(); from += ValuesList.MAX_ROWS) {
+				List<String> slice = ids.subList(from, Math.min(ids.size(), from + ValuesList.MAX_ROWS));
+				int rows = ValuesList.rows(slice.size());
+				PreparedStatement statement = pooled.prepare(updateSql(rows));
+				for (int i = 0; i < slice.size(); i++) {
+					statement.setString(i + 1, slice.get(i));
+				}
+				ValuesList.pad(statement, slice.size() + 1, rows);
+				updated += statement.executeUpdate();
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * Links each source row in {@code ids} to the address id at the same position of {@code addressIds}, for rows
+	 * whose address was written under another row's {@code OLD_TBL_ID}.
+	 */
+	public long link(List<String> ids, long[] addressIds) throws SQLException {
+		if (ids.size() != addressIds.length) {
+			throw new IllegalArgumentException("Expected one address id per source id");
+		}
+		if (ids.isEmpty()) {
+			return 0;
+		}
+
+		long updated = 0;
+		try (PooledConnection pooled = client.acquire()) {
+			// Two parameters per row, which still stays below the limit
+			for (int from = 0; from < ids.size(); from += ValuesList.MAX_ROWS) {
+				int to = Math.min(ids.size(), from + ValuesList.MAX_ROWS);
+				int rows = ValuesList.rows(to - from);
+				PreparedStatement statement = pooled.prepare(assignSql(rows));
+				int parameter = 1;
+				for (int i = from; i < to; i++) {
+					statement.setString(parameter++, ids.get(i));
+					statement.setLong(parameter++, addressIds[i]);
+				}
+				ValuesList.pad(statement, parameter, rows * 2);
+				updated += statement.executeUpdate();
+			}
+		}
+		return updated;
+	}
+
+	private String assignSql(int rows) {
+		String values = ValuesList.of(rows, "(CAST(? AS varchar(64)), CAST(? AS decimal(20,0)))");
+		return """
+				MERGE INTO %s AS t
+				USING (VALUES %s) k(id, address) ON t.%s = k.id
+				WHEN MATCHED THEN UPDATE SET t.%s = k.address;
+				""".formatted(table, values, idField, idRefField);
+	}
+
+	private String updateSql(int rows) {
+		String values = ValuesList.of(rows, "(CAST(? AS varchar(64)))");
+		return """
+				MERGE INTO %s AS t
+				USING (
+					SELECT k.id, MAX(ad.%s) AS address
+					FROM (VALUES %s) k(id)
+					JOIN %s ad ON ad.%s = k.id
+					GROUP BY k.id
+				) s ON t.%s = s.id
+				WHEN MATCHED THEN UPDATE SET t.%s = s.address;
+				""".formatted(table, refIdField, values, refTable, refLinkField, idField, idRefField);
+	}
+}
@@ -0,0 +1,34 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Destination for formatted addresses. Chunks are handed over by a single writer thread, in the order the pipeline
+ * completes them.
+ */
+public interface AddressSink extends AutoCloseable {
+	long write(List<StructuredAddress> chunk) throws SQLException, IOException;
+
+	/**
+	 * Writes {@code chunk} with the given {@code ID_FPR_PAYREL} for each row instead of drawing new ones; only
+	 * supported when {@link #acceptsAssignedIds()} is true.
+	 */
+	default long write(List<StructuredAddress> chunk, long[] ids) throws SQLException, IOException {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not take assigned ids");
+	}
+
+	/** Whether the sink supports {@link #write(List, long[])}, which deduplication needs. */
+	default boolean acceptsAssignedIds() {
+		return false;
+	}
+
+	/** Whether written rows end up in the address table, so that the link stage can point at them. */
+	default boolean linkable() {
+		return true;
+	}
+
+	@Override
+	default void close() throws IOException {}
+}
@@ -0,0 +1,142 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Objects;
+
+import dev.allanbrunner.addressFormatter.db.IdBlockAllocator;
+import dev.allanbrunner.addressFormatter.db.PooledConnection;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+
+/**
+ * Streams whole chunks through the SQL Server bulk-copy protocol. The driver only routes a batched INSERT to
+ * {@code SQLServerBulkCopy} when every value is a parameter, so the constants written by
+ * {@link StructuredAddressBatchWriter} are bound here as well. The switch is set per connection by reflection because
+ * the driver is only present at runtime.
+ */
+public final class BulkCopyAddressSink implements AddressSink {
+	private static final String BULK_COPY_SETTER = "setUseBulkCopyForBatchInsert";
+
+	private final String insertSql;
+	private final IdBlockAllocator ids;
+	private final SqlClient client;
+
+	public BulkCopyAddressSink(String table, IdBlockAllocator ids, SqlClient client) {
+		this.insertSql = insertSql(Objects.requireNonNull(table, "table"));
+		this.ids = Objects.requireNonNull(ids, "ids");
+		this.client = Objects.requireNonNull(client, "client");
+	}
+
+	@Override
+	public long write(List<StructuredAddress> chunk) throws SQLException {
+		long[] assigned = new long[chunk.size()];
+		for (int i = 0; i < assigned.length; i++) {
+			assigned[i] = ids.next();
+		}
+		return write(chunk, assigned);
+	}
+
+	@Override
+	public boolean acceptsAssignedIds() {
+		return true;
+	}
+
+	@Override
+	public long write(List<StructuredAddress> chunk, long[] assigned) throws SQLException {
+		if (chunk.isEmpty()) {
+			return 0;
+		}
+
+		try (PooledConnection pooled = client.acquire()) {
+			Connection connection = pooled.connection();
+			Connection driver = connection.unwrap(Connection.class);
+			Method bulkCopy = bulkCopySetter(driver);
+			setBulkCopy(bulkCopy, driver, true);
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+				Timestamp now = new Timestamp(System.currentTimeMillis());
+				for (int i = 0; i < chunk.size(); i++) {
+					bind(statement, assigned[i], chunk.get(i), now);
+					statement.addBatch();
+				}
+				int[] counts = statement.executeBatch();
+				connection.commit();
+				return StructuredAddressBatchWriter.written(counts);
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+				setBulkCopy(bulkCopy, driver, false);
+			}
+		}
+	}
+
+	private static void bind(PreparedStatement statement, long id, StructuredAddress addr, Timestamp now)
+			throws SQLException {
+		statement.setLong(1, id);
+		statement.setString(2, "FCF");
+		StructuredAddressBatchWriter.setNullable(statement, 3, addr.name());
+		StructuredAddressBatchWriter.setNullable(statement, 4, addr.compl1());
+		StructuredAddressBatchWriter.setNullable(statement, 5, addr.compl2());
+		StructuredAddressBatchWriter.setNullable(statement, 6, addr.streetOrPoBox());
+		StructuredAddressBatchWriter.setNullable(statement, 7, addr.houseNumber());
+		statement.setInt(8, addr.postal().code());
+		StructuredAddressBatchWriter.setNullable(statement, 9, addr.city());
+		StructuredAddressBatchWriter.setNullable(statement, 10, addr.country());
+		statement.setString(11, "TRAN_CH");
+		statement.setString(12, "CH00");
+		statement.setString(13, "CHF");
+		statement.setInt(14, 0);
+		statement.setNull(15, Types.NVARCHAR);
+		statement.setTimestamp(16, now);
+		statement.setNull(17, Types.TIMESTAMP);
+		statement.setString(18, "ACTIVE");
+		statement.setString(19, "OTH");
+		statement.setInt(20, 1);
+		statement.setString(21, "FORMAT");
+		statement.setTimestamp(22, now);
+		statement.setString(23, "FORMAT");
+		statement.setTimestamp(24, now);
+		StructuredAddressBatchWriter.setNullable(statement, 25, addr.id());
+		statement.setNull(26, Types.NVARCHAR);
+		statement.setInt(27, 0);
+		statement.setInt(28, 0);
+		statement.setNull(29, Types.NVARCHAR);
+		statement.setNull(30, Types.NVARCHAR);
+	}
+
+	private static Method bulkCopySetter(Connection driver) throws SQLException {
+		try {
+			return driver.getClass().getMethod(BULK_COPY_SETTER, boolean.class);
+		} catch (NoSuchMethodException e) {
+			throw new SQLException("JDBC driver " + driver.getClass().getName() + " does not support bulk copy", e);
+		}
+	}
+
+	private static void setBulkCopy(Method setter, Connection driver, boolean enabled) throws SQLException {
+		try {
+			setter.invoke(driver, enabled);
+		} catch (IllegalAccessException e) {
+			throw new SQLException("Cannot toggle bulk copy", e);
+		} catch (InvocationTargetException e) {
+			throw e.getCause() instanceof SQLException sql ? sql : new SQLException("Cannot toggle bulk copy", e);
+		}
+	}
+
+	private static String insertSql(String table) {
+		return SqlClient.addressInsertInto(table) + """
+				VALUES (
+					?, ?, ?, ?, ?, ?, ?, ?, ?, ?,
+					?, ?, ?, ?, ?, ?, ?, ?, ?, ?,
+					?, ?, ?, ?, ?, ?, ?, ?, ?, ?
+				)
+				""";
+	}
+}
@@ -0,0 +1,73 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.util.Arrays;
+import java.util.List;
+
+import dev.allanbrunner.addressFormatter.util.BoundedLruCache;
+import dev.allanbrunner.addressFormatter.util.CacheStats;
+
+/**
+ * Memoizes {@link AddressFormatterService#format} on the trimmed, non-empty lines of the input, which is all the
+ * result depends on besides the id. Cached results are stored without their id and re-keyed on every hit.
+ */
+public final class CachingAddressFormatter {
+	private final BoundedLruCache<LinesKey, StructuredAddress> cache;
+
+	public CachingAddressFormatter(int maximumSize) {
+		this.cache = new BoundedLruCache<>(maximumSize);
+	}
+
+	public StructuredAddress format(UnstructuredAddress raw) {
+		StructuredAddress cached = cache.computeIfAbsent(LinesKey.of(raw.lines()),
+				key -> AddressFormatterService.format(new UnstructuredAddress("", key.padded())));
+		return withId(cached, raw.id());
+	}
+
+	public CacheStats stats() { return cache.stats(); }
+
+	private static StructuredAddress withId(StructuredAddress addr, String id) {
+		return new StructuredAddress(id, addr.title(), addr.name(), addr.lastname(), addr.firstname(), addr.compl1(),
+				addr.compl2(), addr.address(), addr.postal(), addr.city(), addr.country());
+	}
+
+	private static final class LinesKey {
+		private final String[] lines;
+		private final int hash;
+
+		private LinesKey(String[] lines) {
+			this.lines = lines;
+			this.hash = Arrays.hashCode(lines);
+		}
+
+		static LinesKey of(List<String> rawLines) {
+			String[] trimmed = new String[rawLines.size()];
+			int count = 0;
+			for (int i = 0; i < rawLines.size(); i++) {
+				String line = rawLines.get(i);
+				if (line != null) {
+					line = line.trim();
+					if (!line.isEmpty()) {
+						trimmed[count++] = line;
+					}
+				}
+			}
+			return new LinesKey(count == trimmed.length ? trimmed : Arrays.copyOf(trimmed, count));
+		}
+
+		String[] padded() {
+			String[] padded = new String[6];
+			for (int i = 0; i < 6; i++) {
+				padded[i] = i < lines.length ? lines[i] : "";
+			}
+			return padded;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof LinesKey other && hash == other.hash && Arrays.equals(lines, other.lines);
+		}
+
+		@Override
+		public int hashCode() { return hash; }
+	}
+}
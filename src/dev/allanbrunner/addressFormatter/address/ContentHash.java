@@ -0,0 +1,36 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.util.List;
+
+/**
+ * 64-bit FNV-1a hash of the address lines of a source row, used to tell whether a row changed since it was last
+ * migrated. Each line is preceded by its length, so moving text between lines changes the hash whatever characters
+ * the lines contain. An absent line hashes like an empty one.
+ */
+public final class ContentHash {
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private ContentHash() {}
+
+	public static long of(UnstructuredAddress raw) {
+		return of(raw.lines());
+	}
+
+	public static long of(List<String> lines) {
+		long hash = OFFSET_BASIS;
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			int length = line != null ? line.length() : 0;
+			for (int shift = 0; shift < 32; shift += 8) {
+				hash = (hash ^ ((length >>> shift) & 0xFF)) * PRIME;
+			}
+			for (int j = 0; j < length; j++) {
+				char c = line.charAt(j);
+				hash = (hash ^ (c & 0xFF)) * PRIME;
+				hash = (hash ^ (c >>> 8)) * PRIME;
+			}
+		}
+		return hash;
+	}
+}
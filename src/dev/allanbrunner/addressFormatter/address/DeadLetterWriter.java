@@ -0,0 +1,169 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.allanbrunner.addressFormatter.db.PooledConnection;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+
+/**
+ * Writes chunks through an {@link AddressSink} and, when a chunk is rejected, bisects it to find the offending rows.
+ * Every sink write is its own transaction, so the halves of a failed chunk can simply be retried. Rows that fail on
+ * their own are stored with the error in {@code <table>_DEAD_LETTER}, one batch per chunk, and the rest of the chunk
+ * is written normally, even when that leaves nothing of it. Errors other than data and constraint errors are not the
+ * row's fault and are rethrown.
+ */
+public final class DeadLetterWriter {
+	private static final int MAX_ERROR_LENGTH = 2000;
+	// SQL Server errors caused by the values of a row. The driver reports most of them with a generic SQLSTATE, so they
+	// are recognized by number: truncation (2628, 8152), conversion and overflow (245, 8114, 8115), NULL into a NOT
+	// NULL column (515), check or foreign key violation (547) and duplicate key (2601, 2627).
+	private static final Set<Integer> ROW_ERROR_CODES = Set.of(2628, 8152, 245, 8114, 8115, 515, 547, 2601, 2627);
+
+	private final String deadLetterTable;
+	private final SqlClient client;
+	private final LongAdder quarantined = new LongAdder();
+	private final LongAdder bisections = new LongAdder();
+
+	public DeadLetterWriter(String table, SqlClient client) {
+		this.deadLetterTable = Objects.requireNonNull(table, "table") + "_DEAD_LETTER";
+		this.client = Objects.requireNonNull(client, "client");
+	}
+
+	public void ensureTable() throws SQLException {
+		client.executeNonQuery("""
+				IF OBJECT_ID(N'%s', N'U') IS NULL
+				CREATE TABLE %s (
+					OLD_TBL_ID varchar(64) NULL,
+					PAYLOAD nvarchar(max) NULL,
+					SQL_STATE varchar(5) NULL,
+					ERROR_CODE int NULL,
+					ERROR nvarchar(%d) NULL,
+					FAILED_AT datetime2 NOT NULL DEFAULT SYSUTCDATETIME()
+				)
+				""".formatted(deadLetterTable, deadLetterTable, MAX_ERROR_LENGTH));
+	}
+
+	/**
+	 * Writes {@code chunk} with the given ids, or with ids drawn by the sink when {@code ids} is {@code null}, and
+	 * returns the positions of the rows that were quarantined instead.
+	 */
+	public BitSet write(AddressSink sink, List<StructuredAddress> chunk, long[] ids) throws SQLException, IOException {
+		BitSet failed = new BitSet(chunk.size());
+		List<Rejected> rejected = new ArrayList<>();
+		write(sink, chunk, ids, 0, chunk.size(), failed, rejected);
+		if (!rejected.isEmpty()) {
+			quarantine(rejected);
+		}
+		return failed;
+	}
+
+	public String stats() {
+		return "quarantined=%d, bisections=%d".formatted(quarantined.sum(), bisections.sum());
+	}
+
+	private void write(AddressSink sink, List<StructuredAddress> chunk, long[] ids, int from, int to, BitSet failed,
+			List<Rejected> rejected) throws SQLException, IOException {
+		List<StructuredAddress> slice = chunk.subList(from, to);
+		try {
+			if (ids == null) {
+				sink.write(slice);
+			} else {
+				sink.write(slice, Arrays.copyOfRange(ids, from, to));
+			}
+		} catch (SQLException e) {
+			if (!isRowError(e)) {
+				throw e;
+			}
+			if (to - from == 1) {
+				failed.set(from);
+				rejected.add(new Rejected(chunk.get(from), e));
+				return;
+			}
+			bisections.increment();
+			int middle = (from + to) >>> 1;
+			write(sink, chunk, ids, from, middle, failed, rejected);
+			write(sink, chunk, ids, middle, to, failed, rejected);
+		}
+	}
+
+	/**
+	 * Only data exceptions (SQLSTATE class 22), constraint violations (class 23) and the SQL Server errors in
+	 * {@link #ROW_ERROR_CODES} are blamed on the rows. Deadlocks, timeouts, connection, permission and schema errors
+	 * would fail for any row and are rethrown.
+	 */
+	private static boolean isRowError(SQLException e) {
+		for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+			if (cause instanceof SQLTransientException || cause instanceof SQLNonTransientConnectionException) {
+				return false;
+			}
+			if (ROW_ERROR_CODES.contains(cause.getErrorCode())) {
+				return true;
+			}
+			String state = cause.getSQLState();
+			if (state != null) {
+				return state.startsWith("22") || state.startsWith("23");
+			}
+		}
+		return false;
+	}
+
+	private void quarantine(List<Rejected> rejected) throws SQLException {
+		String sql = "INSERT INTO " + deadLetterTable
+				+ " (OLD_TBL_ID, PAYLOAD, SQL_STATE, ERROR_CODE, ERROR) VALUES (?, ?, ?, ?, ?)";
+		try (PooledConnection pooled = client.acquire()) {
+			Connection connection = pooled.connection();
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				for (Rejected row : rejected) {
+					StructuredAddress addr = row.address();
+					SQLException error = row.error();
+					statement.setString(1, addr.id());
+					statement.setString(2, payload(addr));
+					statement.setString(3, error.getSQLState());
+					statement.setInt(4, error.getErrorCode());
+					String message = String.valueOf(error.getMessage());
+					statement.setString(5, message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH)
+							: message);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		quarantined.add(rejected.size());
+	}
+
+	private static String payload(StructuredAddress addr) {
+		String[] columns = { addr.name(), addr.compl1(), addr.compl2(), addr.streetOrPoBox(), addr.houseNumber(),
+				Integer.toString(addr.postal().code()), addr.city(), addr.country() };
+		StringBuilder payload = new StringBuilder(128);
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				payload.append('|');
+			}
+			if (columns[i] != null) {
+				payload.append(columns[i]);
+			}
+		}
+		return payload.toString();
+	}
+
+	private record Rejected(StructuredAddress address, SQLException error) {}
+}
@@ -0,0 +1,307 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.allanbrunner.addressFormatter.db.PooledConnection;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+import dev.allanbrunner.addressFormatter.db.ValuesList;
+
+/**
+ * Keeps a {@link ContentHash} per migrated source row in {@code <table>_DELTA} so a run only formats and writes rows
+ * that are new or whose lines changed. Addresses already written for such a row, for an earlier version of it, by a
+ * run without {@code DELTA}, or by a run that stopped between linking and storing the hash, are looked up before the
+ * new one is inserted and deleted only once it is linked, in the transaction that stores the new hash, so a failed or
+ * quarantined row keeps its old, still linked address. When the source has a rowversion (or other increasing
+ * bigint) column, the last migrated version is kept in {@code <table>_DELTA_STATE} and only rows above it are read at
+ * all.
+ */
+public final class DeltaTracker {
+	private static final int MAX_IDS_PER_STATEMENT = ValuesList.MAX_ROWS;
+
+	private final String table;
+	private final String refLinkField;
+	private final String refIdField;
+	private final String sourceTable;
+	private final String hashTable;
+	private final String stateTable;
+	private final SqlClient client;
+	private final Map<String, Pending> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder added = new LongAdder();
+	private final LongAdder changed = new LongAdder();
+	private final LongAdder unchanged = new LongAdder();
+
+	private String versionColumn;
+	private long versionUpTo;
+
+	public DeltaTracker(String table, String refIdField, String refLinkField, String sourceTable, SqlClient client) {
+		this.table = Objects.requireNonNull(table, "table");
+		this.refIdField = Objects.requireNonNull(refIdField, "refIdField");
+		this.refLinkField = Objects.requireNonNull(refLinkField, "refLinkField");
+		this.sourceTable = Objects.requireNonNull(sourceTable, "sourceTable");
+		this.hashTable = table + "_DELTA";
+		this.stateTable = table + "_DELTA_STATE";
+		this.client = Objects.requireNonNull(client, "client");
+	}
+
+	public void ensureTables() throws SQLException {
+		client.executeNonQuery("""
+				IF OBJECT_ID(N'%s', N'U') IS NULL
+				CREATE TABLE %s (
+					OLD_TBL_ID varchar(64) NOT NULL PRIMARY KEY,
+					CONTENT_HASH bigint NOT NULL
+				)
+				""".formatted(hashTable, hashTable));
+		client.executeNonQuery("""
+				IF OBJECT_ID(N'%s', N'U') IS NULL
+				CREATE TABLE %s (
+					SOURCE_TABLE nvarchar(128) NOT NULL PRIMARY KEY,
+					LAST_VERSION bigint NOT NULL
+				)
+				""".formatted(stateTable, stateTable));
+	}
+
+	/**
+	 * Fixes the version window of this run to everything above the last committed version up to the current maximum,
+	 * and returns it as a filter on the source table. Rows changed while the run is going are left for the next one.
+	 * The bounds are bound as {@code binary(8)} so the column itself is compared as is and its index can be used.
+	 */
+	public SourceFilter openVersionWindow(String column) throws SQLException {
+		this.versionColumn = Objects.requireNonNull(column, "column");
+		List<List<String>> last = client.executeQuery(
+				"SELECT LAST_VERSION FROM " + stateTable + " WHERE SOURCE_TABLE = ?", false, sourceTable);
+		List<List<String>> max = client.executeQuery(
+				"SELECT ISNULL(CAST(MAX(" + column + ") AS bigint), 0) FROM " + sourceTable, false);
+		this.versionUpTo = Long.parseLong(max.get(0).get(0));
+
+		String upper = column + " <= CAST(? AS binary(8))";
+		return last.isEmpty() ? SourceFilter.of(upper, versionUpTo)
+				: SourceFilter.of(column + " > CAST(? AS binary(8)) AND " + upper, Long.parseLong(last.get(0).get(0)),
+						versionUpTo);
+	}
+
+	/** Records the window opened by {@link #openVersionWindow} as done; call only once the whole run succeeded. */
+	public void commitVersionWindow() throws SQLException {
+		if (versionColumn == null) {
+			return;
+		}
+		client.executeNonQuery("""
+				MERGE %s AS s
+				USING (VALUES (CAST(? AS nvarchar(128)), CAST(? AS bigint))) v(source, version)
+					ON s.SOURCE_TABLE = v.source
+				WHEN MATCHED THEN UPDATE SET s.LAST_VERSION = v.version
+				WHEN NOT MATCHED THEN INSERT (SOURCE_TABLE, LAST_VERSION) VALUES (v.source, v.version);
+				""".formatted(stateTable), sourceTable, versionUpTo);
+	}
+
+	/** Passes on only the rows that are new or changed, looking their stored hashes up one page at a time. */
+	public Iterator<UnstructuredAddress> changed(Iterator<UnstructuredAddress> source) {
+		return new Iterator<>() {
+			private final List<UnstructuredAddress> page = new ArrayList<>(MAX_IDS_PER_STATEMENT);
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				while (index >= page.size()) {
+					page.clear();
+					index = 0;
+					while (page.size() < MAX_IDS_PER_STATEMENT && source.hasNext()) {
+						page.add(source.next());
+					}
+					if (page.isEmpty()) {
+						return false;
+					}
+					filter(page);
+				}
+				return true;
+			}
+
+			@Override
+			public UnstructuredAddress next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return page.get(index++);
+			}
+		};
+	}
+
+	/**
+	 * Looks up the addresses already written for the new and changed rows in {@code chunk}; call it before the chunk
+	 * is written. {@link #record} deletes them once the new addresses are linked. New rows are looked up as well, since
+	 * a missing hash does not mean no address was written for the row.
+	 */
+	public void lookUpSuperseded(List<StructuredAddress> chunk) throws SQLException {
+		List<String> ids = new ArrayList<>();
+		for (StructuredAddress addr : chunk) {
+			if (inFlight.containsKey(addr.id())) {
+				ids.add(addr.id());
+			}
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+
+		Map<String, List<Long>> superseded = new HashMap<>(ids.size() * 2);
+		try (PooledConnection pooled = client.acquire()) {
+			for (int from = 0; from < ids.size(); from += MAX_IDS_PER_STATEMENT) {
+				List<String> slice = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_STATEMENT));
+				int rows = ValuesList.rows(slice.size());
+				String sql = "SELECT ad.%s, ad.%s FROM %s ad JOIN (VALUES %s) k(id) ON ad.%s = k.id".formatted(
+						refLinkField, refIdField, table, ValuesList.of(rows, "(CAST(? AS varchar(64)))"), refLinkField);
+				PreparedStatement statement = pooled.prepare(sql);
+				for (int i = 0; i < slice.size(); i++) {
+					statement.setString(i + 1, slice.get(i));
+				}
+				ValuesList.pad(statement, slice.size() + 1, rows);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						superseded.computeIfAbsent(resultSet.getString(1).trim(), id -> new ArrayList<>(1))
+								.add(resultSet.getLong(2));
+					}
+				}
+			}
+		}
+		superseded.forEach((id, addresses) -> inFlight.computeIfPresent(id,
+				(key, pending) -> new Pending(pending.hash, addresses)));
+	}
+
+	/**
+	 * Deletes the superseded addresses of rows that have been written and linked and stores their hashes, in one
+	 * transaction. Superseded addresses have lower ids than the ones that replace them, so the link stage, which picks
+	 * the highest id per source row, already points at the new address by then.
+	 */
+	public void record(List<StructuredAddress> chunk) throws SQLException {
+		if (inFlight.isEmpty()) {
+			return;
+		}
+		List<String> ids = new ArrayList<>(chunk.size());
+		List<Long> hashes = new ArrayList<>(chunk.size());
+		List<Long> superseded = new ArrayList<>();
+		for (StructuredAddress addr : chunk) {
+			Pending pending = inFlight.get(addr.id());
+			if (pending != null) {
+				ids.add(addr.id());
+				hashes.add(pending.hash);
+				superseded.addAll(pending.superseded);
+			}
+		}
+
+		try (PooledConnection pooled = client.acquire()) {
+			Connection connection = pooled.connection();
+			connection.setAutoCommit(false);
+			try {
+				for (int from = 0; from < superseded.size(); from += MAX_IDS_PER_STATEMENT) {
+					int to = Math.min(superseded.size(), from + MAX_IDS_PER_STATEMENT);
+					List<Long> slice = superseded.subList(from, to);
+					int rows = ValuesList.rows(slice.size());
+					String sql = "DELETE ad FROM %s ad JOIN (VALUES %s) k(id) ON ad.%s = k.id".formatted(table,
+							ValuesList.of(rows, "(CAST(? AS decimal(20,0)))"), refIdField);
+					PreparedStatement statement = pooled.prepare(sql);
+					for (int i = 0; i < slice.size(); i++) {
+						statement.setLong(i + 1, slice.get(i));
+					}
+					ValuesList.pad(statement, slice.size() + 1, rows);
+					statement.executeUpdate();
+				}
+				for (int from = 0; from < ids.size(); from += MAX_IDS_PER_STATEMENT) {
+					int to = Math.min(ids.size(), from + MAX_IDS_PER_STATEMENT);
+					int rows = ValuesList.rows(to - from);
+					// The padding rows have no id and must not reach the INSERT branch
+					String sql = """
+							MERGE %s AS h
+							USING (SELECT id, hash FROM (VALUES %s) v(id, hash) WHERE id IS NOT NULL) k
+								ON h.OLD_TBL_ID = k.id
+							WHEN MATCHED THEN UPDATE SET h.CONTENT_HASH = k.hash
+							WHEN NOT MATCHED THEN INSERT (OLD_TBL_ID, CONTENT_HASH) VALUES (k.id, k.hash);
+							""".formatted(hashTable,
+							ValuesList.of(rows, "(CAST(? AS varchar(64)), CAST(? AS bigint))"));
+					PreparedStatement statement = pooled.prepare(sql);
+					int parameter = 1;
+					for (int i = from; i < to; i++) {
+						statement.setString(parameter++, ids.get(i));
+						statement.setLong(parameter++, hashes.get(i));
+					}
+					ValuesList.pad(statement, parameter, rows * 2);
+					statement.executeUpdate();
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		for (String id : ids) {
+			inFlight.remove(id);
+		}
+	}
+
+	/** Forgets rows that were not written; their old address stays and the next run picks them up again. */
+	public void discard(List<StructuredAddress> rows) {
+		for (StructuredAddress addr : rows) {
+			inFlight.remove(addr.id());
+		}
+	}
+
+	public String stats() {
+		return "new=%d, changed=%d, unchanged=%d".formatted(added.sum(), changed.sum(), unchanged.sum());
+	}
+
+	private void filter(List<UnstructuredAddress> page) {
+		Map<String, Long> stored;
+		try {
+			stored = storedHashes(page);
+		} catch (SQLException e) {
+			throw new IllegalStateException("Failed to read " + hashTable, e);
+		}
+
+		int kept = 0;
+		for (UnstructuredAddress raw : page) {
+			long hash = ContentHash.of(raw);
+			Long previous = stored.get(raw.id());
+			if (previous != null && previous == hash) {
+				unchanged.increment();
+				continue;
+			}
+			(previous == null ? added : changed).increment();
+			inFlight.put(raw.id(), new Pending(hash, List.of()));
+			page.set(kept++, raw);
+		}
+		page.subList(kept, page.size()).clear();
+	}
+
+	private Map<String, Long> storedHashes(List<UnstructuredAddress> page) throws SQLException {
+		int rows = ValuesList.rows(page.size());
+		String sql = "SELECT h.OLD_TBL_ID, h.CONTENT_HASH FROM (VALUES %s) k(id) JOIN %s h ON h.OLD_TBL_ID = k.id"
+				.formatted(ValuesList.of(rows, "(CAST(? AS varchar(64)))"), hashTable);
+		Map<String, Long> stored = new HashMap<>(page.size() * 2);
+		try (PooledConnection pooled = client.acquire()) {
+			PreparedStatement statement = pooled.prepare(sql);
+			for (int i = 0; i < page.size(); i++) {
+				statement.setString(i + 1, page.get(i).id());
+			}
+			ValuesList.pad(statement, page.size() + 1, rows);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					stored.put(resultSet.getString(1), resultSet.getLong(2));
+				}
+			}
+		}
+		return stored;
+	}
+
+	private record Pending(long hash, List<Long> superseded) {}
+}
@@ -0,0 +1,15 @@
+package dev.allanbrunner.addressFormatter.address;
+
+/** Source keys {@code after < key <= upTo}; a {@code null} bound is open. */
+public record KeyRange(String after, String upTo) {
+	public static final KeyRange ALL = new KeyRange(null, null);
+
+	public KeyRange resumeAfter(String key) {
+		return key == null ? this : new KeyRange(key, upTo);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + (after == null ? "" : after) + ", " + (upTo == null ? "" : upTo) + "]";
+	}
+}
@@ -0,0 +1,320 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import dev.allanbrunner.addressFormatter.db.RowMapper;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+
+/**
+ * Checks after a run that every source row is linked to an address of its own: the row's {@code idRefField} has to
+ * name a {@code refTable} row whose {@code refLinkField} is the source id, and no source id may own more than one
+ * address.
+ * <p>
+ * The source keys are split into chunks that are checked in parallel. For each chunk both sides are reduced to a row
+ * count and an order-independent sum of {@code (source id, address id)} hashes: the link table's pairs on one side,
+ * the pairs of the addresses owned by the chunk's source ids on the other. Only chunks whose figures differ are read
+ * row by row to find the offending ids. The sums are computed by the server with {@code CHECKSUM} by default, or from
+ * the streamed pairs with {@link #serverChecksums(boolean) serverChecksums(false)} where {@code CHECKSUM} is not
+ * available.
+ * <p>
+ * After a {@code DEDUP} run, rows with the same address are all linked to the one address written for the first of
+ * them. With {@link #sharedAddresses} such a link is accepted when the address has the content the row's own address
+ * would have had: its source lines are formatted again and compared with the address, the way the deduplicator
+ * compares them. Without it these rows are reported as mislinked.
+ */
+public final class LinkReconciler {
+	public enum Kind {
+		/** The source row has no address id. */
+		UNLINKED,
+		/** The address id names no address. */
+		DANGLING,
+		/** The address belongs to another source row. */
+		MISLINKED,
+		/** Several addresses name the source row. */
+		DUPLICATE
+	}
+
+	public record Issue(String id, Kind kind, String detail) {
+		@Override
+		public String toString() {
+			return kind.name().toLowerCase() + "\t" + id + (detail != null ? "\t" + detail : "");
+		}
+	}
+
+	public record Result(int chunks, int mismatchedChunks, long rows, long unlinked, long dangling, long mislinked,
+			long duplicates) {
+		public boolean clean() {
+			return mismatchedChunks == 0;
+		}
+
+		@Override
+		public String toString() {
+			return "chunks=%d, mismatched=%d, rows=%d, unlinked=%d, dangling=%d, mislinked=%d, duplicates=%d"
+					.formatted(chunks, mismatchedChunks, rows, unlinked, dangling, mislinked, duplicates);
+		}
+	}
+
+	// Address columns holding AddressDeduplicator.fields(), in that order
+	private static final List<String> CONTENT_COLUMNS = List.of("FPR_ACCOUNT_OWNER_NAME",
+			"FPR_ACCOUNT_OWNER_ADRESS_LINE1", "FPR_ACCOUNT_OWNER_ADRESS_LINE2", "FPR_STREET", "FPR_BUILDING_NUMBER",
+			"FPR_POST_CODE", "FPR_TOWN_NAME", "FPR_ACCOUNT_OWNER_ADDRESS_COUNTRY");
+
+	private final String table;
+	private final String idField;
+	private final String idRefField;
+	private final String refTable;
+	private final String refIdField;
+	private final String refLinkField;
+	private final SqlClient client;
+	private boolean serverChecksums = true;
+	private Source source;
+
+	public LinkReconciler(String table, String idField, String idRefField, String refTable, String refIdField,
+			String refLinkField, SqlClient client) {
+		this.table = Objects.requireNonNull(table, "table");
+		this.idField = Objects.requireNonNull(idField, "idField");
+		this.idRefField = Objects.requireNonNull(idRefField, "idRefField");
+		this.refTable = Objects.requireNonNull(refTable, "refTable");
+		this.refIdField = Objects.requireNonNull(refIdField, "refIdField");
+		this.refLinkField = Objects.requireNonNull(refLinkField, "refLinkField");
+		this.client = Objects.requireNonNull(client, "client");
+	}
+
+	public LinkReconciler serverChecksums(boolean serverChecksums) {
+		this.serverChecksums = serverChecksums;
+		return this;
+	}
+
+	/**
+	 * Accepts links to an address owned by another source row when the address equals the row's lines in
+	 * {@code sourceTable} formatted with {@code formatter}.
+	 */
+	public LinkReconciler sharedAddresses(String sourceTable, String sourceId, String[] lineColumns,
+			Function<UnstructuredAddress, StructuredAddress> formatter) {
+		this.source = new Source(Objects.requireNonNull(sourceTable, "sourceTable"),
+				Objects.requireNonNull(sourceId, "sourceId"), lineColumns.clone(),
+				Objects.requireNonNull(formatter, "formatter"));
+		return this;
+	}
+
+	/**
+	 * Checks the source keys in about {@code chunkCount} chunks on {@code threads} threads. The issues of each
+	 * mismatched chunk are handed to {@code issues} on the calling thread as soon as the chunk is done.
+	 */
+	public Result run(int chunkCount, int threads, Consumer<? super Issue> issues) throws Exception {
+		List<KeyRange> ranges = AddressFormatterService.partitionKeys(table, idField, chunkCount, client);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, ranges.size())), r -> {
+			Thread thread = new Thread(r, "reconcile");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ExecutorCompletionService<ChunkResult> completion = new ExecutorCompletionService<>(executor);
+		List<Future<ChunkResult>> futures = new ArrayList<>(ranges.size());
+		for (KeyRange range : ranges) {
+			futures.add(completion.submit(() -> check(range)));
+		}
+
+		int mismatched = 0;
+		long rows = 0;
+		long[] counts = new long[Kind.values().length];
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				ChunkResult chunk = completion.take().get();
+				rows += chunk.rows;
+				if (chunk.issues != null) {
+					mismatched++;
+					for (Issue issue : chunk.issues) {
+						counts[issue.kind().ordinal()]++;
+						issues.accept(issue);
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			for (Future<ChunkResult> future : futures) {
+				future.cancel(true);
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception ex) {
+				throw ex;
+			}
+			throw (Error) cause;
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		return new Result(ranges.size(), mismatched, rows, counts[Kind.UNLINKED.ordinal()],
+				counts[Kind.DANGLING.ordinal()], counts[Kind.MISLINKED.ordinal()], counts[Kind.DUPLICATE.ordinal()]);
+	}
+
+	/** Compares both sides of one chunk, and lists its issues when they differ. */
+	private ChunkResult check(KeyRange range) throws SQLException {
+		List<Object> params = new ArrayList<>(2);
+		String where = where(range, params);
+		Object[] bound = params.toArray();
+
+		long[] links = figures("s." + idField, "s." + idRefField, ("""
+				FROM %s s
+				%s
+				""").formatted(table, where), bound);
+		long[] addresses = figures("ad." + refLinkField, "ad." + refIdField, ("""
+				FROM %s ad
+				JOIN %s s ON ad.%s = s.%s
+				%s
+				""").formatted(refTable, table, refLinkField, idField, where), bound);
+		List<Issue> issues = new ArrayList<>();
+		if (source != null) {
+			// Shared links count as matching here; whether they point at the right address is checked by content
+			long[] shared = figures("s." + idField, "s." + idRefField, ("""
+					FROM %s s
+					JOIN %s ad ON ad.%s = s.%s
+					%s
+					""").formatted(table, refTable, refIdField, idRefField, and(where, sharedLink())), bound);
+			addresses[0] += shared[0];
+			addresses[1] += shared[1];
+			checkSharedContent(where, bound, issues);
+		}
+		if (!Arrays.equals(links, addresses)) {
+			drillDown(where, bound, issues);
+		}
+		return new ChunkResult(links[0], issues.isEmpty() ? null : issues);
+	}
+
+	/** Compares the addresses of the chunk's shared links with the linked rows' freshly formatted addresses. */
+	private void checkSharedContent(String where, Object[] params, List<Issue> issues) throws SQLException {
+		StringBuilder select = new StringBuilder("src.").append(source.id);
+		for (int i = 0; i < 6; i++) {
+			select.append(", ").append(i < source.lineColumns.length ? "src." + source.lineColumns[i] : "''");
+		}
+		for (String column : CONTENT_COLUMNS) {
+			select.append(", ad.").append(column);
+		}
+		select.append(", CAST(ad.").append(refIdField).append(" AS decimal(20,0)), ad.").append(refLinkField);
+
+		RowMapper<UnstructuredAddress> rows = AddressFormatterService.unstructuredRows();
+		int first = 8;
+		client.query(("""
+				SELECT %s
+				FROM %s s
+				JOIN %s ad ON ad.%s = s.%s
+				JOIN %s src ON src.%s = s.%s
+				%s
+				""").formatted(select, table, refTable, refIdField, idRefField, source.table, source.id, idField,
+				and(where, sharedLink())), params, row -> {
+					UnstructuredAddress raw = rows.map(row);
+					String[] expected = AddressDeduplicator.fields(source.formatter.apply(raw));
+					for (int i = 0; i < expected.length; i++) {
+						String actual = row.getString(first + i);
+						if (!expected[i].equals(actual == null ? "" : actual.trim())) {
+							return new Issue(raw.id(), Kind.MISLINKED, row.getString(first + expected.length)
+									+ " belongs to " + row.getString(first + expected.length + 1).trim()
+									+ " and differs in " + CONTENT_COLUMNS.get(i));
+						}
+					}
+					return null;
+				}, issue -> {
+					if (issue != null) {
+						issues.add(issue);
+					}
+				});
+	}
+
+	private String sharedLink() {
+		return "ad." + refLinkField + " <> s." + idField;
+	}
+
+	private static String and(String where, String condition) {
+		return where.isEmpty() ? "WHERE " + condition : where + " AND " + condition;
+	}
+
+	private void drillDown(String where, Object[] params, List<Issue> issues) throws SQLException {
+		client.query(("""
+				SELECT CAST(s.%s AS varchar(64)), CAST(s.%s AS decimal(20,0)), ad.%s, ad.%s
+				FROM %s s
+				LEFT JOIN %s ad ON ad.%s = s.%s
+				%s
+				""").formatted(idField, idRefField, refIdField, refLinkField, table, refTable, refIdField, idRefField,
+				where), params, row -> {
+					String id = row.getString(1).trim();
+					String addressId = row.getString(2);
+					if (addressId == null) {
+						return new Issue(id, Kind.UNLINKED, null);
+					}
+					if (row.getObject(3) == null) {
+						return new Issue(id, Kind.DANGLING, addressId);
+					}
+					String owner = row.getString(4);
+					if (owner != null && source != null) {
+						// Shared links are checked by content
+						return null;
+					}
+					if (owner == null || !owner.trim().equals(id)) {
+						return new Issue(id, Kind.MISLINKED, addressId + " belongs to " + owner);
+					}
+					return null;
+				}, issue -> {
+					if (issue != null) {
+						issues.add(issue);
+					}
+				});
+		client.query(("""
+				SELECT CAST(s.%s AS varchar(64)), COUNT(*)
+				FROM %s ad
+				JOIN %s s ON ad.%s = s.%s
+				%s
+				GROUP BY s.%s
+				HAVING COUNT(*) > 1
+				""").formatted(idField, refTable, table, refLinkField, idField, where, idField), params,
+				row -> new Issue(row.getString(1).trim(), Kind.DUPLICATE, row.getLong(2) + " addresses"), issues::add);
+	}
+
+	/** Row count and sum of the {@code (id, addressId)} hashes of the rows {@code from} selects. */
+	private long[] figures(String id, String addressId, String from, Object[] params) throws SQLException {
+		long[] figures = new long[2];
+		if (serverChecksums) {
+			String checksum = "CHECKSUM(CAST(%s AS varchar(64)), CAST(%s AS decimal(20,0)))".formatted(id, addressId);
+			client.query("SELECT COUNT_BIG(*), SUM(CAST(" + checksum + " AS bigint))\n" + from, params, row -> {
+				figures[0] = row.getLong(1);
+				figures[1] = row.getLong(2);
+				return figures;
+			}, f -> {});
+		} else {
+			String sql = "SELECT CAST(%s AS varchar(64)), CAST(%s AS decimal(20,0))\n".formatted(id, addressId) + from;
+			client.query(sql, params, row -> ContentHash.of(Arrays.asList(row.getString(1).trim(), row.getString(2))),
+					hash -> {
+						figures[0]++;
+						figures[1] += hash;
+					});
+		}
+		return figures;
+	}
+
+	private String where(KeyRange range, List<Object> params) {
+		List<String> conditions = new ArrayList<>(2);
+		if (range.after() != null) {
+			conditions.add("s." + idField + " > CAST(? AS varchar(64))");
+			params.add(range.after());
+		}
+		if (range.upTo() != null) {
+			conditions.add("s." + idField + " <= CAST(? AS varchar(64))");
+			params.add(range.upTo());
+		}
+		return conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+	}
+
+	private record ChunkResult(long rows, List<Issue> issues) {}
+
+	private record Source(String table, String id, String[] lineColumns,
+			Function<UnstructuredAddress, StructuredAddress> formatter) {}
+}
@@ -0,0 +1,223 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a name line into last and first name using dictionaries of first names and nobiliary particles.
+ *
+ * <p>
+ * Lines are read as {@code Lastname Firstname} by default. A last name keeps its leading particles and at least one
+ * more token ({@code van der Berg}, {@code de Rham}); a trailing run of known first names, hyphenated ones included,
+ * becomes the first name and everything before it the (possibly double) last name. When only a leading run of first
+ * names is known the line is read as {@code Firstname Lastname} instead. Without any match the remaining tokens after
+ * the last name form the first name.
+ *
+ * <p>
+ * Dictionaries hold 64-bit hashes of the accent- and case-folded names in an open-addressing table, so a lookup hashes
+ * the token in place and allocates nothing. The dictionary files have one name per line; blank lines and lines
+ * starting with {@code #} are skipped.
+ */
+public final class NameSplitter {
+	private static final String[] DEFAULT_PARTICLES = { "de", "du", "des", "del", "della", "di", "da", "dal", "dos",
+			"das", "van", "von", "vom", "der", "den", "ten", "ter", "zu", "zum", "zur", "le", "la" };
+	private static final int MAX_TOKENS = 16;
+	private static final ThreadLocal<int[]> TOKEN_SCRATCH = ThreadLocal.withInitial(() -> new int[MAX_TOKENS * 2]);
+
+	/** Particles only; every line falls back to one last-name token (plus particles) and the rest as first name. */
+	public static final NameSplitter DEFAULT = new NameSplitter(Dictionary.of(List.of()),
+			Dictionary.of(List.of(DEFAULT_PARTICLES)));
+
+	private final Dictionary firstNames;
+	private final Dictionary particles;
+
+	private NameSplitter(Dictionary firstNames, Dictionary particles) {
+		this.firstNames = firstNames;
+		this.particles = particles;
+	}
+
+	/** Loads the first names, and the particles from {@code particleFile} or the built-in list when it is null. */
+	public static NameSplitter load(Path firstNameFile, Path particleFile) throws IOException {
+		Dictionary particles = particleFile != null ? Dictionary.of(readNames(particleFile))
+				: DEFAULT.particles;
+		return new NameSplitter(Dictionary.of(readNames(firstNameFile)), particles);
+	}
+
+	public int firstNameCount() { return firstNames.size(); }
+
+	/**
+	 * Splits the tokens of {@code line} in {@code [from, to)}. The result packs the last name range and the first
+	 * name range; read it with {@link #lastStart}, {@link #lastEnd}, {@link #firstStart} and {@link #firstEnd}. An
+	 * empty range has equal start and end.
+	 */
+	public long split(String line, int from, int to) {
+		int[] tokens = TOKEN_SCRATCH.get();
+		int n = 0;
+		int pos = AddressLineClassifier.skipWhitespace(line, from, to);
+		while (pos < to) {
+			int end = AddressLineClassifier.tokenEnd(line, pos, to);
+			if (n == MAX_TOKENS) {
+				// Fold whatever is left into the last token
+				tokens[2 * n - 1] = to;
+				break;
+			}
+			tokens[2 * n] = pos;
+			tokens[2 * n + 1] = end;
+			n++;
+			pos = AddressLineClassifier.skipWhitespace(line, end, to);
+		}
+		if (n == 0) {
+			return pack(from, from, from, from);
+		}
+
+		int lastMin = 0;
+		while (lastMin < n - 1 && particles.contains(line, tokens[2 * lastMin], tokens[2 * lastMin + 1])) {
+			lastMin++;
+		}
+		lastMin++;
+
+		int tailStart = n;
+		while (tailStart > lastMin && isFirstName(line, tokens[2 * (tailStart - 1)], tokens[2 * tailStart - 1])) {
+			tailStart--;
+		}
+		if (tailStart < n) {
+			return pack(tokens[0], tokens[2 * tailStart - 1], tokens[2 * tailStart], tokens[2 * n - 1]);
+		}
+
+		int headEnd = 0;
+		while (headEnd < n - 1 && isFirstName(line, tokens[2 * headEnd], tokens[2 * headEnd + 1])) {
+			headEnd++;
+		}
+		if (headEnd > 0) {
+			return pack(tokens[2 * headEnd], tokens[2 * n - 1], tokens[0], tokens[2 * headEnd - 1]);
+		}
+
+		int lastEnd = tokens[2 * lastMin - 1];
+		return lastMin < n ? pack(tokens[0], lastEnd, tokens[2 * lastMin], tokens[2 * n - 1])
+				: pack(tokens[0], lastEnd, lastEnd, lastEnd);
+	}
+
+	public static int lastStart(long split) { return (int) (split >>> 48); }
+
+	public static int lastEnd(long split) { return (int) (split >>> 32) & 0xFFFF; }
+
+	public static int firstStart(long split) { return (int) (split >>> 16) & 0xFFFF; }
+
+	public static int firstEnd(long split) { return (int) split & 0xFFFF; }
+
+	private boolean isFirstName(String line, int from, int to) {
+		if (firstNames.contains(line, from, to)) {
+			return true;
+		}
+		// Jean-Pierre, Hans-Peter: every part has to be a first name
+		int part = from;
+		boolean hyphenated = false;
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) == '-') {
+				if (i == part || !firstNames.contains(line, part, i)) {
+					return false;
+				}
+				hyphenated = true;
+				part = i + 1;
+			}
+		}
+		return hyphenated && part < to && firstNames.contains(line, part, to);
+	}
+
+	private static long pack(int lastStart, int lastEnd, int firstStart, int firstEnd) {
+		int longest = Math.max(Math.max(lastStart, lastEnd), Math.max(firstStart, firstEnd));
+		if (longest > 0xFFFF) {
+			throw new IllegalArgumentException("Name line too long: " + longest);
+		}
+		return (long) lastStart << 48 | (long) lastEnd << 32 | (long) firstStart << 16 | firstEnd;
+	}
+
+	private static List<String> readNames(Path file) throws IOException {
+		List<String> names = new ArrayList<>(8192);
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+					names.add(trimmed);
+				}
+			}
+		}
+		return names;
+	}
+
+	/** Set of folded names stored as 64-bit hashes; 0 marks a free slot. */
+	private static final class Dictionary {
+		private final long[] slots;
+		private final int size;
+
+		private Dictionary(long[] slots, int size) {
+			this.slots = slots;
+			this.size = size;
+		}
+
+		static Dictionary of(List<String> names) {
+			int capacity = Integer.highestOneBit(Math.max(4, names.size() * 2 - 1)) << 1;
+			long[] slots = new long[capacity];
+			int size = 0;
+			for (String name : names) {
+				long hash = hash(name, 0, name.length());
+				if (hash == 0) {
+					continue;
+				}
+				int mask = capacity - 1;
+				int slot = (int) hash & mask;
+				while (slots[slot] != 0 && slots[slot] != hash) {
+					slot = (slot + 1) & mask;
+				}
+				if (slots[slot] == 0) {
+					slots[slot] = hash;
+					size++;
+				}
+			}
+			return new Dictionary(slots, size);
+		}
+
+		int size() { return size; }
+
+		boolean contains(String s, int from, int to) {
+			long hash = size == 0 ? 0 : hash(s, from, to);
+			if (hash == 0) {
+				return false;
+			}
+			int mask = slots.length - 1;
+			for (int slot = (int) hash & mask;; slot = (slot + 1) & mask) {
+				long stored = slots[slot];
+				if (stored == hash) {
+					return true;
+				}
+				if (stored == 0) {
+					return false;
+				}
+			}
+		}
+
+		/**
+		 * FNV-1a over the folded characters, so {@code Jose}, {@code JOSE} and {@code Jos\u00e9} hash alike; 0 when
+		 * nothing is left after folding.
+		 */
+		private static long hash(String s, int from, int to) {
+			long hash = 0xcbf29ce484222325L;
+			boolean folded = false;
+			for (int i = from; i < to; i++) {
+				char c = PostalCodeIndex.fold(s.charAt(i));
+				if (c != 0) {
+					hash ^= c;
+					hash *= 0x100000001b3L;
+					folded = true;
+				}
+			}
+			return !folded ? 0 : hash == 0 ? 1 : hash;
+		}
+	}
+}
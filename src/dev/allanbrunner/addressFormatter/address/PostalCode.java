@@ -1,6 +1,15 @@
 package dev.allanbrunner.addressFormatter.address;
 
 public final class PostalCode {
+	private static final int MAX_SHARED_CODE = 9999;
+	private static final PostalCode[] SHARED = new PostalCode[MAX_SHARED_CODE + 1];
+
+	static {
+		for (int code = 0; code <= MAX_SHARED_CODE; code++) {
+			SHARED[code] = new PostalCode(code, null);
+		}
+	}
+
 	private final int code;
 	private final Integer suffix;
 
@@ -9,6 +18,14 @@ public final class PostalCode {
 		this.suffix = suffix;
 	}
 
+	/** Returns a shared instance for four-digit codes without suffix, which is nearly every Swiss address. */
+	public static PostalCode of(int code, Integer suffix) {
+		if (suffix == null && code >= 0 && code <= MAX_SHARED_CODE) {
+			return SHARED[code];
+		}
+		return new PostalCode(code, suffix);
+	}
+
 	public int code() { return code; }
 
 	public Integer suffix() { return suffix; }
@@ -0,0 +1,212 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory index of Swiss postal codes (NPA/PLZ) and their localities, used to check and canonicalize the postal code
+ * and city that {@link AddressFormatterService#format} extracted.
+ *
+ * <p>
+ * The source file has one {@code code;suffix;locality} record per line, for example {@code 8001;00;Zurich}. Blank
+ * lines, lines starting with {@code #} and a header line are skipped. Entries are kept in arrays sorted by code, with a
+ * per-code offset table so a code lookup is a single array access.
+ */
+public final class PostalCodeIndex {
+	public enum Verdict {
+		VALID, CANONICALIZED, COMPLETED, UNKNOWN_CODE, CITY_MISMATCH, NOT_APPLICABLE
+	}
+
+	private static final int MAX_CODE = 9999;
+	private static final char[] FOLD = foldTable();
+
+	private final int[] firstEntry;
+	private final int[] suffixes;
+	private final String[] localities;
+	private final String[] foldedLocalities;
+	private final Map<Verdict, LongAdder> verdicts = new EnumMap<>(Verdict.class);
+
+	private PostalCodeIndex(List<Entry> entries) {
+		entries.sort(Comparator.comparingInt(Entry::code).thenComparingInt(Entry::suffix));
+		int size = entries.size();
+		this.firstEntry = new int[MAX_CODE + 2];
+		this.suffixes = new int[size];
+		this.localities = new String[size];
+		this.foldedLocalities = new String[size];
+
+		int[] counts = new int[MAX_CODE + 1];
+		for (int i = 0; i < size; i++) {
+			Entry entry = entries.get(i);
+			suffixes[i] = entry.suffix();
+			localities[i] = entry.locality();
+			foldedLocalities[i] = fold(entry.locality());
+			counts[entry.code()]++;
+		}
+		for (int code = 0; code <= MAX_CODE; code++) {
+			firstEntry[code + 1] = firstEntry[code] + counts[code];
+		}
+		for (Verdict verdict : Verdict.values()) {
+			verdicts.put(verdict, new LongAdder());
+		}
+	}
+
+	public static PostalCodeIndex load(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<>(4096);
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String trimmed = line.trim();
+				if (trimmed.isEmpty() || trimmed.startsWith("#") || !Character.isDigit(trimmed.charAt(0))) {
+					continue;
+				}
+				String[] cells = trimmed.split(";", 3);
+				if (cells.length < 3) {
+					throw new IOException(file + ":" + lineNumber + ": expected code;suffix;locality");
+				}
+				try {
+					int code = Integer.parseInt(cells[0].trim());
+					int suffix = cells[1].isBlank() ? 0 : Integer.parseInt(cells[1].trim());
+					if (code < 0 || code > MAX_CODE) {
+						throw new IOException(file + ":" + lineNumber + ": postal code out of range: " + code);
+					}
+					entries.add(new Entry(code, suffix, cells[2].trim()));
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return new PostalCodeIndex(entries);
+	}
+
+	public boolean isKnown(int code) {
+		return code >= 0 && code <= MAX_CODE && firstEntry[code] < firstEntry[code + 1];
+	}
+
+	public StructuredAddress validate(StructuredAddress addr) {
+		String country = addr.country();
+		if (!"CH".equalsIgnoreCase(country) && !"LI".equalsIgnoreCase(country)) {
+			return count(Verdict.NOT_APPLICABLE, addr);
+		}
+
+		int code = addr.postal().code();
+		if (!isKnown(code)) {
+			return count(Verdict.UNKNOWN_CODE, addr);
+		}
+
+		int from = firstEntry[code];
+		int to = firstEntry[code + 1];
+		String city = addr.city();
+		if (city.isEmpty()) {
+			String only = singleLocality(from, to);
+			return only == null ? count(Verdict.CITY_MISMATCH, addr)
+					: count(Verdict.COMPLETED, withCity(addr, only));
+		}
+
+		int match = -1;
+		Integer suffix = addr.postal().suffix();
+		for (int i = from; i < to; i++) {
+			if (foldedEquals(city, foldedLocalities[i])) {
+				match = i;
+				if (suffix == null || suffix == suffixes[i]) {
+					break;
+				}
+			}
+		}
+		if (match < 0) {
+			return count(Verdict.CITY_MISMATCH, addr);
+		}
+		if (localities[match].equals(city)) {
+			return count(Verdict.VALID, addr);
+		}
+		return count(Verdict.CANONICALIZED, withCity(addr, localities[match]));
+	}
+
+	public Map<Verdict, Long> stats() {
+		Map<Verdict, Long> stats = new EnumMap<>(Verdict.class);
+		verdicts.forEach((verdict, count) -> stats.put(verdict, count.sum()));
+		return stats;
+	}
+
+	private StructuredAddress count(Verdict verdict, StructuredAddress addr) {
+		verdicts.get(verdict).increment();
+		return addr;
+	}
+
+	private String singleLocality(int from, int to) {
+		String only = null;
+		for (int i = from; i < to; i++) {
+			if (only == null) {
+				only = localities[i];
+			} else if (!only.equals(localities[i])) {
+				return null;
+			}
+		}
+		return only;
+	}
+
+	private static StructuredAddress withCity(StructuredAddress addr, String city) {
+		return new StructuredAddress(addr.id(), addr.title(), addr.name(), addr.lastname(), addr.firstname(),
+				addr.compl1(), addr.compl2(), addr.address(), addr.postal(), city, addr.country());
+	}
+
+	/** Compares {@code value} folded on the fly against an already folded string, without allocating. */
+	static boolean foldedEquals(String value, String folded) {
+		int j = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = fold(value.charAt(i));
+			if (c == 0) {
+				continue;
+			}
+			if (j >= folded.length() || folded.charAt(j) != c) {
+				return false;
+			}
+			j++;
+		}
+		return j == folded.length();
+	}
+
+	static String fold(String value) {
+		StringBuilder folded = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = fold(value.charAt(i));
+			if (c != 0) {
+				folded.append(c);
+			}
+		}
+		return folded.toString();
+	}
+
+	/** Lower-cased base letter or digit, or {@code 0} for characters ignored when comparing localities. */
+	static char fold(char c) {
+		if (c < FOLD.length) {
+			return FOLD[c];
+		}
+		return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : 0;
+	}
+
+	private static char[] foldTable() {
+		char[] table = new char[0x250];
+		for (char c = 0; c < table.length; c++) {
+			if (!Character.isLetterOrDigit(c)) {
+				continue;
+			}
+			String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+			table[c] = Character.toLowerCase(decomposed.charAt(0));
+		}
+		return table;
+	}
+
+	private record Entry(int code, int suffix, String locality) {}
+}
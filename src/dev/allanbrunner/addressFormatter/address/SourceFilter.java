@@ -0,0 +1,22 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/** SQL predicate on a source table, with the values of its {@code ?} placeholders in order. */
+public record SourceFilter(String predicate, List<Object> params) {
+	public SourceFilter {
+		Objects.requireNonNull(predicate, "predicate");
+		params = List.copyOf(params);
+	}
+
+	public static SourceFilter of(String predicate, Object... params) {
+		return new SourceFilter(predicate, Arrays.asList(params));
+	}
+
+	@Override
+	public String toString() {
+		return params.isEmpty() ? predicate : predicate + " " + params;
+	}
+}
@@ -0,0 +1,134 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes formatted addresses to a UTF-8 CSV staging file (RFC 4180 quoting), for loading with {@code BULK INSERT} or
+ * {@code bcp}, or for running the formatter without a target database. Rows carry the source id instead of a
+ * generated {@code ID_FPR_PAYREL}, so nothing can be linked until the file is loaded.
+ */
+public final class StagingFileAddressSink implements AddressSink {
+	private static final String[] HEADER = { "OLD_TBL_ID", "FPR_ACCOUNT_OWNER_NAME", "FPR_ACCOUNT_OWNER_ADRESS_LINE1",
+			"FPR_ACCOUNT_OWNER_ADRESS_LINE2", "FPR_STREET", "FPR_BUILDING_NUMBER", "FPR_POST_CODE", "FPR_TOWN_NAME",
+			"FPR_ACCOUNT_OWNER_ADDRESS_COUNTRY" };
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final StringBuilder row = new StringBuilder(256);
+
+	private StagingFileAddressSink(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	public static StagingFileAddressSink open(Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		StagingFileAddressSink sink = new StagingFileAddressSink(FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+		sink.writeRow(HEADER);
+		return sink;
+	}
+
+	@Override
+	public synchronized long write(List<StructuredAddress> chunk) throws IOException {
+		String[] cells = new String[HEADER.length];
+		for (StructuredAddress addr : chunk) {
+			cells[0] = addr.id();
+			cells[1] = addr.name();
+			cells[2] = addr.compl1();
+			cells[3] = addr.compl2();
+			cells[4] = addr.streetOrPoBox();
+			cells[5] = addr.houseNumber();
+			cells[6] = Integer.toString(addr.postal().code());
+			cells[7] = addr.city();
+			cells[8] = addr.country();
+			writeRow(cells);
+		}
+		return chunk.size();
+	}
+
+	@Override
+	public boolean linkable() {
+		return false;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try (channel) {
+			drain();
+			channel.force(false);
+		}
+	}
+
+	private void writeRow(String[] cells) throws IOException {
+		row.setLength(0);
+		for (int i = 0; i < cells.length; i++) {
+			if (i > 0) {
+				row.append(',');
+			}
+			appendCell(cells[i]);
+		}
+		row.append("\r\n");
+
+		CharBuffer chars = CharBuffer.wrap(row);
+		encoder.reset();
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+			if (result.isUnderflow()) {
+				break;
+			}
+			if (result.isOverflow()) {
+				drain();
+			} else {
+				result.throwException();
+			}
+		}
+	}
+
+	private void appendCell(String value) {
+		if (value == null) {
+			return;
+		}
+		String trimmed = value.trim();
+		boolean quote = false;
+		for (int i = 0; i < trimmed.length() && !quote; i++) {
+			char c = trimmed.charAt(i);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!quote) {
+			row.append(trimmed);
+			return;
+		}
+		row.append('"');
+		for (int i = 0; i < trimmed.length(); i++) {
+			char c = trimmed.charAt(i);
+			if (c == '"') {
+				row.append('"');
+			}
+			row.append(c);
+		}
+		row.append('"');
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -24,4 +24,18 @@ public record StructuredAddress(String id, String title, String name, String las
 	public Optional<String> compl1Opt() { return Optional.ofNullable(compl1); }
 
 	public Optional<String> compl2Opt() { return Optional.ofNullable(compl2); }
+
+	public String streetOrPoBox() {
+		if (address instanceof AddressLine.Street street) {
+			return street.street();
+		}
+		if (address instanceof AddressLine.PoBox poBox) {
+			return poBox.boxNumber();
+		}
+		return null;
+	}
+
+	public String houseNumber() {
+		return address instanceof AddressLine.Street street ? street.houseNumber() : null;
+	}
 }
@@ -0,0 +1,111 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.Objects;
+
+import dev.allanbrunner.addressFormatter.db.IdBlockAllocator;
+import dev.allanbrunner.addressFormatter.db.PooledConnection;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+
+/**
+ * Writes chunks of structured addresses with a single prepared INSERT executed as a JDBC batch inside one
+ * transaction. Ids are taken from an {@link IdBlockAllocator} instead of {@code MAX(ID_FPR_PAYREL)+1}.
+ */
+public final class StructuredAddressBatchWriter implements AddressSink {
+	private final String insertSql;
+	private final IdBlockAllocator ids;
+	private final SqlClient client;
+
+	public StructuredAddressBatchWriter(String table, IdBlockAllocator ids, SqlClient client) {
+		this.insertSql = insertSql(Objects.requireNonNull(table, "table"));
+		this.ids = Objects.requireNonNull(ids, "ids");
+		this.client = Objects.requireNonNull(client, "client");
+	}
+
+	@Override
+	public long write(List<StructuredAddress> chunk) throws SQLException {
+		long[] assigned = new long[chunk.size()];
+		for (int i = 0; i < assigned.length; i++) {
+			assigned[i] = ids.next();
+		}
+		return write(chunk, assigned);
+	}
+
+	@Override
+	public boolean acceptsAssignedIds() {
+		return true;
+	}
+
+	@Override
+	public long write(List<StructuredAddress> chunk, long[] assigned) throws SQLException {
+		if (chunk.isEmpty()) {
+			return 0;
+		}
+
+		try (PooledConnection pooled = client.acquire()) {
+			Connection connection = pooled.connection();
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement statement = pooled.prepare(insertSql);
+				for (int i = 0; i < chunk.size(); i++) {
+					bind(statement, assigned[i], chunk.get(i));
+					statement.addBatch();
+				}
+				int[] counts = statement.executeBatch();
+				connection.commit();
+				return written(counts);
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+
+	private static void bind(PreparedStatement statement, long id, StructuredAddress addr) throws SQLException {
+		statement.setLong(1, id);
+		setNullable(statement, 2, addr.name());
+		setNullable(statement, 3, addr.compl1());
+		setNullable(statement, 4, addr.compl2());
+		setNullable(statement, 5, addr.streetOrPoBox());
+		setNullable(statement, 6, addr.houseNumber());
+		statement.setInt(7, addr.postal().code());
+		setNullable(statement, 8, addr.city());
+		setNullable(statement, 9, addr.country());
+		setNullable(statement, 10, addr.id());
+	}
+
+	static void setNullable(PreparedStatement statement, int index, String value) throws SQLException {
+		if (value == null || value.trim().isEmpty()) {
+			statement.setNull(index, Types.NVARCHAR);
+		} else {
+			statement.setString(index, value.trim());
+		}
+	}
+
+	static long written(int[] counts) {
+		long total = 0;
+		for (int count : counts) {
+			total += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+		}
+		return total;
+	}
+
+	private static String insertSql(String table) {
+		return SqlClient.addressInsertInto(table) + """
+				VALUES (
+					?, 'FCF', ?, ?, ?, ?, ?, ?, ?, ?,
+					'TRAN_CH', 'CH00', 'CHF', 0, NULL,
+					GETDATE(), NULL, 'ACTIVE', 'OTH', 1,
+					'FORMAT', GETDATE(), 'FORMAT', GETDATE(),
+					?, NULL, 0, 0, NULL, NULL
+				)
+				""";
+	}
+}
@@ -1,22 +1,64 @@
 package dev.allanbrunner.addressFormatter.address;
 
-import java.util.Arrays;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 
+/**
+ * Raw address as six positional lines. Only non-empty lines are stored, together with a bit mask of their positions;
+ * {@link #lines()} still presents all six, with {@code ""} for the empty ones.
+ */
 public final class UnstructuredAddress {
+	private static final int LINE_COUNT = 6;
+	private static final String[] NO_LINES = new String[0];
+
 	private final String id;
-	private final List<String> lines;
+	private final String[] present;
+	private final byte positions;
 
 	public UnstructuredAddress(String id, String[] lines) {
 		this.id = Objects.requireNonNull(id, "id");
-		if (lines.length != 6) {
+		if (lines.length != LINE_COUNT) {
 			throw new IllegalArgumentException("Expected exactly six address lines");
 		}
-		this.lines = List.copyOf(Arrays.asList(lines));
+		int count = 0;
+		int mask = 0;
+		for (int i = 0; i < LINE_COUNT; i++) {
+			if (!Objects.requireNonNull(lines[i], "line").isEmpty()) {
+				count++;
+				mask |= 1 << i;
+			}
+		}
+		String[] kept = count == 0 ? NO_LINES : new String[count];
+		for (int i = 0, k = 0; k < count; i++) {
+			if ((mask & 1 << i) != 0) {
+				kept[k++] = lines[i];
+			}
+		}
+		this.present = kept;
+		this.positions = (byte) mask;
 	}
 
 	public String id() { return id; }
 
-	public List<String> lines() { return lines; }
+	public List<String> lines() { return new Lines(); }
+
+	/** Number of non-empty lines. */
+	public int lineCount() { return present.length; }
+
+	private final class Lines extends AbstractList<String> implements RandomAccess {
+		@Override
+		public String get(int index) {
+			Objects.checkIndex(index, LINE_COUNT);
+			int bit = 1 << index;
+			if ((positions & bit) == 0) {
+				return "";
+			}
+			return present[Integer.bitCount(positions & (bit - 1))];
+		}
+
+		@Override
+		public int size() { return LINE_COUNT; }
+	}
 }
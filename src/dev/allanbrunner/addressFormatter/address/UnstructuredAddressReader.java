@@ -0,0 +1,124 @@
+package dev.allanbrunner.addressFormatter.address;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import dev.allanbrunner.addressFormatter.db.AdaptiveBatchSize;
+import dev.allanbrunner.addressFormatter.db.RowMapper;
+import dev.allanbrunner.addressFormatter.db.SqlClient;
+
+/**
+ * Pages through a source table by keyset ({@code WHERE id > lastId ORDER BY id}) so only one page of rows is held in
+ * memory at a time.
+ */
+public final class UnstructuredAddressReader implements Iterator<UnstructuredAddress> {
+	private final SqlClient client;
+	private final String table;
+	private final String colId;
+	private final String selectList;
+	private final RowMapper<UnstructuredAddress> rows = AddressFormatterService.unstructuredRows();
+
+	private final List<UnstructuredAddress> page = new ArrayList<>();
+	private AdaptiveBatchSize pageSize;
+	private int pageIndex;
+	private String lastId;
+	private String upTo;
+	private SourceFilter filter;
+	private boolean exhausted;
+
+	public UnstructuredAddressReader(String table, String colId, String[] colLines, int pageSize, SqlClient client) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
+		this.client = Objects.requireNonNull(client, "client");
+		this.table = Objects.requireNonNull(table, "table");
+		this.colId = Objects.requireNonNull(colId, "colId");
+		this.selectList = AddressFormatterService.selectList(colId, colLines);
+		this.pageSize = AdaptiveBatchSize.fixed("read", pageSize);
+	}
+
+	public UnstructuredAddressReader startAfter(String id) {
+		this.lastId = id;
+		return this;
+	}
+
+	public UnstructuredAddressReader endAt(String id) {
+		this.upTo = id;
+		return this;
+	}
+
+	/** Restricts the rows read with an additional predicate on the source table. */
+	public UnstructuredAddressReader where(SourceFilter filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	/** Lets {@code pageSize} choose the rows per page and feeds it the latency of every page read. */
+	public UnstructuredAddressReader pageSize(AdaptiveBatchSize pageSize) {
+		this.pageSize = Objects.requireNonNull(pageSize, "pageSize");
+		return this;
+	}
+
+	public UnstructuredAddressReader range(KeyRange range) {
+		return startAfter(range.after()).endAt(range.upTo());
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (pageIndex < page.size()) {
+			return true;
+		}
+		if (exhausted) {
+			return false;
+		}
+		fetchNextPage();
+		return pageIndex < page.size();
+	}
+
+	@Override
+	public UnstructuredAddress next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		UnstructuredAddress address = page.get(pageIndex++);
+		lastId = address.id();
+		return address;
+	}
+
+	private void fetchNextPage() {
+		List<String> conditions = new ArrayList<>(3);
+		// Keys are varchar; a Unicode parameter would make the server convert the column and scan
+		List<Object> params = new ArrayList<>(5);
+		if (lastId != null) {
+			conditions.add(colId + " > CAST(? AS varchar(64))");
+			params.add(lastId);
+		}
+		if (upTo != null) {
+			conditions.add(colId + " <= CAST(? AS varchar(64))");
+			params.add(upTo);
+		}
+		if (filter != null) {
+			conditions.add("(" + filter.predicate() + ")");
+			params.addAll(filter.params());
+		}
+		String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+		String sql = "SELECT TOP (?) " + selectList + " FROM " + table + where + " ORDER BY " + colId;
+		int size = pageSize.current();
+		params.add(0, size);
+		page.clear();
+		long start = System.nanoTime();
+		try {
+			client.query(sql, params.toArray(), size, rows, page::add);
+		} catch (SQLException e) {
+			pageSize.backOff();
+			throw new IllegalStateException("Failed to read " + table + " after " + colId + " " + lastId, e);
+		}
+		pageSize.record(page.size(), System.nanoTime() - start);
+		pageIndex = 0;
+		exhausted = page.size() < size;
+	}
+}
@@ -0,0 +1,84 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * AIMD controller for the number of rows moved per database round trip. A round trip that used the whole size and
+ * came back within the target latency grows the size by a fixed step; one that took longer than the target halves it.
+ * The size stays within {@code [min, max]}. Round trips that moved fewer rows than asked for, like the last page of a
+ * table, only update the averages.
+ */
+public final class AdaptiveBatchSize {
+	private static final double SMOOTHING = 0.2;
+
+	private final String name;
+	private final int min;
+	private final int max;
+	private final int step;
+	private final long targetNanos;
+	private int current;
+	private long increases;
+	private long decreases;
+	private double meanNanos;
+	private double rowsPerSecond;
+
+	public AdaptiveBatchSize(String name, int min, int max, int initial, Duration targetLatency) {
+		if (min <= 0 || max < min) {
+			throw new IllegalArgumentException("Expected 0 < min <= max, got " + min + ".." + max);
+		}
+		this.name = Objects.requireNonNull(name, "name");
+		this.min = min;
+		this.max = max;
+		this.step = Math.max(1, (max - min) / 32);
+		this.targetNanos = targetLatency.toNanos();
+		this.current = Math.max(min, Math.min(max, initial));
+	}
+
+	public static AdaptiveBatchSize fixed(String name, int size) {
+		return new AdaptiveBatchSize(name, size, size, size, Duration.ofDays(1));
+	}
+
+	public synchronized int current() { return current; }
+
+	public synchronized void record(int rows, long nanos) {
+		if (rows <= 0) {
+			return;
+		}
+		meanNanos = meanNanos == 0 ? nanos : meanNanos + SMOOTHING * (nanos - meanNanos);
+		double rate = rows * 1e9 / Math.max(1, nanos);
+		rowsPerSecond = rowsPerSecond == 0 ? rate : rowsPerSecond + SMOOTHING * (rate - rowsPerSecond);
+
+		if (nanos > targetNanos) {
+			decrease();
+		} else if (rows >= current && current < max) {
+			current = Math.min(max, current + step);
+			increases++;
+		}
+	}
+
+	/** Halves the size after a failed round trip, such as a timeout. */
+	public synchronized void backOff() {
+		decrease();
+	}
+
+	public synchronized Snapshot snapshot() {
+		return new Snapshot(name, current, min, max, increases, decreases, meanNanos / 1e6, rowsPerSecond);
+	}
+
+	private void decrease() {
+		if (current > min) {
+			current = Math.max(min, current / 2);
+			decreases++;
+		}
+	}
+
+	public record Snapshot(String name, int current, int min, int max, long increases, long decreases,
+			double meanMillis, double rowsPerSecond) {
+		@Override
+		public String toString() {
+			return String.format("%s=%d [%d..%d] +%d/-%d, %.1f ms/round trip, %.0f rows/s", name, current, min, max,
+					increases, decreases, meanMillis, rowsPerSecond);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import dev.allanbrunner.addressFormatter.metrics.LatencyHistogram;
+
+/**
+ * Bounded pool of JDBC connections. Idle connections are validated before reuse when they have been idle for a while
+ * and evicted in the background once they exceed the configured idle timeout.
+ */
+final class ConnectionPool implements AutoCloseable {
+	private static final long VALIDATION_SKIP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final PoolConfig config;
+	private final Semaphore permits;
+	private final Deque<Entry> idle = new ArrayDeque<>();
+	private final ScheduledExecutorService evictor;
+	private final LatencyHistogram acquireLatency = new LatencyHistogram();
+	private boolean closed;
+
+	ConnectionPool(String url, String user, String password, PoolConfig config) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.config = config;
+		this.permits = new Semaphore(config.maxSize(), true);
+
+		long evictEvery = Math.max(1000, config.idleTimeout().toMillis() / 2);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "sql-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.evictor.scheduleWithFixedDelay(this::evictIdle, evictEvery, evictEvery, TimeUnit.MILLISECONDS);
+	}
+
+	PooledConnection acquire() throws SQLException {
+		long start = System.nanoTime();
+		PooledConnection pooled = acquireUntimed();
+		acquireLatency.record(System.nanoTime() - start);
+		return pooled;
+	}
+
+	LatencyHistogram acquireLatency() { return acquireLatency; }
+
+	private PooledConnection acquireUntimed() throws SQLException {
+		try {
+			if (!permits.tryAcquire(config.acquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out after " + config.acquireTimeout().toMillis()
+						+ " ms waiting for a pooled connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a pooled connection", e);
+		}
+
+		try {
+			Entry entry;
+			while ((entry = pollIdle()) != null) {
+				if (isUsable(entry)) {
+					return new PooledConnection(this, entry);
+				}
+				closeQuietly(entry.connection());
+			}
+			return new PooledConnection(this, new Entry(DriverManager.getConnection(url, user, password),
+					config.statementCacheSize()));
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	void release(Entry entry) {
+		Connection connection = entry.connection();
+		boolean reusable;
+		try {
+			reusable = !connection.isClosed();
+			if (reusable && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			reusable = false;
+		}
+
+		synchronized (this) {
+			if (reusable && !closed) {
+				entry.idleSince = System.nanoTime();
+				idle.push(entry);
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			closeQuietly(connection);
+		}
+		permits.release();
+	}
+
+	private synchronized Entry pollIdle() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		return idle.pollFirst();
+	}
+
+	private boolean isUsable(Entry entry) {
+		long idleNanos = System.nanoTime() - entry.idleSince;
+		if (idleNanos > config.idleTimeout().toNanos()) {
+			return false;
+		}
+		if (idleNanos < VALIDATION_SKIP_NANOS) {
+			return true;
+		}
+		try {
+			return entry.connection().isValid((int) Math.max(1, config.validationTimeout().toSeconds()));
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void evictIdle() {
+		long now = System.nanoTime();
+		List<Entry> expired = new ArrayList<>();
+		synchronized (this) {
+			Iterator<Entry> it = idle.descendingIterator();
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				if (now - entry.idleSince > config.idleTimeout().toNanos()) {
+					it.remove();
+					expired.add(entry);
+				}
+			}
+		}
+		for (Entry entry : expired) {
+			closeQuietly(entry.connection());
+		}
+	}
+
+	@Override
+	public void close() {
+		List<Entry> toClose;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			toClose = new ArrayList<>(idle);
+			idle.clear();
+		}
+		evictor.shutdownNow();
+		for (Entry entry : toClose) {
+			closeQuietly(entry.connection());
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// Connection is being discarded anyway
+		}
+	}
+
+	/**
+	 * A physical connection and its prepared statements, which outlive the {@link PooledConnection} handles it is
+	 * lent out through.
+	 */
+	static final class Entry {
+		private final Connection connection;
+		private final int statementCacheSize;
+		private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+		private long idleSince;
+
+		Entry(Connection connection, int statementCacheSize) {
+			this.connection = connection;
+			this.statementCacheSize = statementCacheSize;
+		}
+
+		Connection connection() { return connection; }
+
+		PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement statement = statements.get(sql);
+			if (statement != null && !statement.isClosed()) {
+				statement.clearParameters();
+				statement.clearBatch();
+				return statement;
+			}
+			statement = connection.prepareStatement(sql);
+			statements.put(sql, statement);
+			evictStatements();
+			return statement;
+		}
+
+		private void evictStatements() {
+			Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+			while (statements.size() > statementCacheSize && it.hasNext()) {
+				PreparedStatement eldest = it.next().getValue();
+				it.remove();
+				try {
+					eldest.close();
+				} catch (SQLException e) {
+					// Statement is being discarded anyway
+				}
+			}
+		}
+	}
+}
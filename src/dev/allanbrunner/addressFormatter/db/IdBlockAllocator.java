@@ -0,0 +1,59 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Hands out ids from blocks reserved on a SQL Server sequence with {@code sp_sequence_get_range}, so a whole block
+ * costs a single round trip. Ids of a block that is not fully used are simply skipped. Subclasses can reserve blocks
+ * another way on databases without {@code sp_sequence_get_range}.
+ */
+public class IdBlockAllocator {
+	private static final String RESERVE_SQL = """
+			SET NOCOUNT ON;
+			DECLARE @first sql_variant;
+			EXEC sys.sp_sequence_get_range @sequence_name = ?, @range_size = ?, @range_first_value = @first OUTPUT;
+			SELECT CAST(@first AS bigint);
+			""";
+
+	private final SqlClient client;
+	private final String sequenceName;
+	private final int blockSize;
+
+	private long next;
+	private long limit;
+
+	public IdBlockAllocator(String sequenceName, int blockSize, SqlClient client) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("blockSize must be positive");
+		}
+		this.client = Objects.requireNonNull(client, "client");
+		this.sequenceName = Objects.requireNonNull(sequenceName, "sequenceName");
+		this.blockSize = blockSize;
+	}
+
+	public synchronized long next() throws SQLException {
+		if (next >= limit) {
+			next = reserve(blockSize);
+			limit = next + blockSize;
+		}
+		return next++;
+	}
+
+	/** Reserves {@code size} consecutive ids and returns the first one. */
+	protected long reserve(int size) throws SQLException {
+		try (PooledConnection pooled = client.acquire()) {
+			PreparedStatement statement = pooled.prepare(RESERVE_SQL);
+			statement.setString(1, sequenceName);
+			statement.setLong(2, size);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (!resultSet.next()) {
+					throw new SQLException("No range returned for sequence " + sequenceName);
+				}
+				return resultSet.getLong(1);
+			}
+		}
+	}
+}
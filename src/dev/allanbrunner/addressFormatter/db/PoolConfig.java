@@ -0,0 +1,35 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public record PoolConfig(int maxSize, Duration acquireTimeout, Duration idleTimeout, Duration validationTimeout,
+		int statementCacheSize) {
+	public PoolConfig {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		Objects.requireNonNull(acquireTimeout, "acquireTimeout");
+		Objects.requireNonNull(idleTimeout, "idleTimeout");
+		Objects.requireNonNull(validationTimeout, "validationTimeout");
+		if (statementCacheSize <= 0) {
+			throw new IllegalArgumentException("statementCacheSize must be positive");
+		}
+	}
+
+	public PoolConfig(int maxSize, Duration acquireTimeout, Duration idleTimeout, Duration validationTimeout) {
+		this(maxSize, acquireTimeout, idleTimeout, validationTimeout, 64);
+	}
+
+	public static PoolConfig defaults() {
+		return new PoolConfig(4, Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(5));
+	}
+
+	public PoolConfig withMaxSize(int maxSize) {
+		return new PoolConfig(maxSize, acquireTimeout, idleTimeout, validationTimeout, statementCacheSize);
+	}
+
+	public PoolConfig withStatementCacheSize(int statementCacheSize) {
+		return new PoolConfig(maxSize, acquireTimeout, idleTimeout, validationTimeout, statementCacheSize);
+	}
+}
@@ -0,0 +1,51 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection borrowed from a {@link SqlClient}. Closing it hands the underlying connection back to the pool instead of
+ * closing it. Every borrow gets its own handle, so closing one twice cannot return the connection while a later
+ * borrower is using it; once closed, the handle refuses further use.
+ *
+ * <p>
+ * Statements obtained from {@link #prepare} are cached with the physical connection and reused by whoever borrows it
+ * next, so each distinct statement is prepared once per connection rather than once per call. Callers must not close
+ * them.
+ */
+public final class PooledConnection implements AutoCloseable {
+	private final ConnectionPool pool;
+	private final ConnectionPool.Entry entry;
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	PooledConnection(ConnectionPool pool, ConnectionPool.Entry entry) {
+		this.pool = pool;
+		this.entry = entry;
+	}
+
+	public Connection connection() {
+		checkNotReleased();
+		return entry.connection();
+	}
+
+	/** Returns a cached prepared statement for {@code sql} with its parameters and batch cleared. */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		checkNotReleased();
+		return entry.prepare(sql);
+	}
+
+	@Override
+	public void close() {
+		if (released.compareAndSet(false, true)) {
+			pool.release(entry);
+		}
+	}
+
+	private void checkNotReleased() {
+		if (released.get()) {
+			throw new IllegalStateException("Connection already returned to the pool");
+		}
+	}
+}
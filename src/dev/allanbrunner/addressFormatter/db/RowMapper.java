@@ -0,0 +1,13 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to a value. A mapper may keep a mutable buffer and reuse it across rows, as
+ * long as the value it returns does not share that buffer.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+	T map(ResultSet row) throws SQLException;
+}
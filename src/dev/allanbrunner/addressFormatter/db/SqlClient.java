@@ -1,132 +1,311 @@
 package dev.allanbrunner.addressFormatter.db;
 
-import java.sql.Statement;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.math.BigDecimal;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+
+import dev.allanbrunner.addressFormatter.metrics.LatencyHistogram;
 
 public final class SqlClient implements AutoCloseable {
-	private final String connectionString;
-	private final String user;
-	private final String password;
+	/** Columns of the address table, in the order of {@link #ensureAddressTable}; every INSERT lists them this way. */
+	public static final List<String> ADDRESS_COLUMNS = List.of("ID_FPR_PAYREL", "FPR_PAYEMENT_DOMAIN",
+			"FPR_ACCOUNT_OWNER_NAME", "FPR_ACCOUNT_OWNER_ADRESS_LINE1", "FPR_ACCOUNT_OWNER_ADRESS_LINE2", "FPR_STREET",
+			"FPR_BUILDING_NUMBER", "FPR_POST_CODE", "FPR_TOWN_NAME", "FPR_ACCOUNT_OWNER_ADDRESS_COUNTRY",
+			"FPR_ACCOUNT_TYPE", "FPR_ACCOUNT_NO", "FPR_CURRENCY", "FPR_PAYMENT_POOL", "FPR_ACCOUNT_NO_REF",
+			"FPR_VALIDITY_START", "FPR_VALIDITY_END", "FPR_STATE", "FPR_SOURCE", "FPR_VALID", "FPR_USR_LOG_I",
+			"FPR_DTE_LOG_I", "FPR_USR_LOG_U", "FPR_DTE_LOG_U", "OLD_TBL_ID", "OLD_ID_ADRESSE", "RIP_PERSON_ID",
+			"RIP_PERSON_BPC_ID", "PAC_PAYEMENT_ADRESS_ID", "PAC_VERSION_ADR");
+
+	private final ConnectionPool pool;
 	private final int batchSize;
 
 	public SqlClient(String server, String port, String database, String user, String password, int batchSize)
 			throws SQLException {
+		this(server, port, database, user, password, batchSize, PoolConfig.defaults());
+	}
+
+	public SqlClient(String server, String port, String database, String user, String password, int batchSize,
+			PoolConfig poolConfig) throws SQLException {
 		try {
 			Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
 		} catch (ClassNotFoundException e) {
 			throw new SQLException("SQL Server JDBC driver not available", e);
 		}
 
-		this.connectionString = String.format(
+		String connectionString = String.format(
 				"jdbc:sqlserver://%s:%s;database=%s;encrypt=true;trustServerCertificate=true", server, port, database);
-		this.user = user;
-		this.password = password;
+		this.pool = new ConnectionPool(connectionString, user, password, poolConfig);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Connects to an arbitrary JDBC URL, for example an embedded stand-in database; the driver must be on the class
+	 * path. Statements are still written for SQL Server, so the target has to accept its dialect.
+	 */
+	public SqlClient(String url, String user, String password, int batchSize, PoolConfig poolConfig) {
+		this.pool = new ConnectionPool(url, user, password, poolConfig);
 		this.batchSize = batchSize;
 	}
 
 	public List<List<String>> executeQuery(String sql, boolean includeHeader) throws SQLException {
-		try (Connection connection = openConnection(); Statement statement = connection.createStatement()) {
+		try (PooledConnection pooled = acquire(); Statement statement = pooled.connection().createStatement()) {
 			statement.setFetchSize(batchSize);
 			try (ResultSet resultSet = statement.executeQuery(sql)) {
-				List<List<String>> results = new ArrayList<>();
-				if (includeHeader) {
-					ResultSetMetaData metaData = resultSet.getMetaData();
-					int columnCount = metaData.getColumnCount();
-					List<String> header = new ArrayList<>(columnCount);
-					for (int i = 1; i <= columnCount; i++) {
-						header.add(metaData.getColumnName(i));
-					}
-					results.add(header);
-				}
+				return readAll(resultSet, includeHeader);
+			}
+		}
+	}
 
-				int columnCount = resultSet.getMetaData().getColumnCount();
+	/**
+	 * Runs {@code sql} with {@code ?} placeholders bound to {@code params} through the connection's statement cache,
+	 * so the server compiles one plan for the statement text however many values it is run with.
+	 */
+	public List<List<String>> executeQuery(String sql, boolean includeHeader, Object... params) throws SQLException {
+		try (PooledConnection pooled = acquire()) {
+			PreparedStatement statement = pooled.prepare(sql);
+			statement.setFetchSize(batchSize);
+			bind(statement, params);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return readAll(resultSet, includeHeader);
+			}
+		}
+	}
+
+	/**
+	 * Streams the rows of a parameterized query through {@code mapper} into {@code consumer} as they arrive, without
+	 * collecting them first, and returns the number of rows read.
+	 */
+	public <T> long query(String sql, Object[] params, RowMapper<? extends T> mapper, Consumer<? super T> consumer)
+			throws SQLException {
+		return query(sql, params, batchSize, mapper, consumer);
+	}
+
+	/** Like {@link #query(String, Object[], RowMapper, Consumer)}, with an explicit driver fetch size. */
+	public <T> long query(String sql, Object[] params, int fetchSize, RowMapper<? extends T> mapper,
+			Consumer<? super T> consumer) throws SQLException {
+		try (PooledConnection pooled = acquire()) {
+			PreparedStatement statement = pooled.prepare(sql);
+			statement.setFetchSize(fetchSize);
+			bind(statement, params);
+			long rows = 0;
+			try (ResultSet resultSet = statement.executeQuery()) {
 				while (resultSet.next()) {
-					List<String> row = new ArrayList<>(columnCount);
-					for (int i = 1; i <= columnCount; i++) {
-						String value = resultSet.getString(i);
-						row.add(value);
-					}
-					results.add(row);
+					consumer.accept(mapper.map(resultSet));
+					rows++;
 				}
-				return results;
 			}
+			return rows;
 		}
 	}
 
 	public long executeNonQuery(String sql) throws SQLException {
-		try (Connection connection = openConnection(); Statement statement = connection.createStatement()) {
-			statement.setFetchSize(batchSize);
+		try (PooledConnection pooled = acquire(); Statement statement = pooled.connection().createStatement()) {
 			return statement.executeUpdate(sql);
 		}
 	}
 
+	/** Parameterized counterpart of {@link #executeNonQuery(String)}, with the same plan reuse as executeQuery. */
+	public long executeNonQuery(String sql, Object... params) throws SQLException {
+		try (PooledConnection pooled = acquire()) {
+			PreparedStatement statement = pooled.prepare(sql);
+			bind(statement, params);
+			return statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * Binds {@code params} to placeholders 1..n by their Java type. {@code null} binds as a typeless NVARCHAR null,
+	 * which SQL Server converts to the column type.
+	 */
+	public static void bind(PreparedStatement statement, Object... params) throws SQLException {
+		for (int i = 0; i < params.length; i++) {
+			int index = i + 1;
+			Object value = params[i];
+			if (value == null) {
+				statement.setNull(index, Types.NVARCHAR);
+			} else if (value instanceof String text) {
+				statement.setString(index, text);
+			} else if (value instanceof Integer number) {
+				statement.setInt(index, number);
+			} else if (value instanceof Long number) {
+				statement.setLong(index, number);
+			} else if (value instanceof BigDecimal number) {
+				statement.setBigDecimal(index, number);
+			} else if (value instanceof Boolean flag) {
+				statement.setBoolean(index, flag);
+			} else if (value instanceof Timestamp timestamp) {
+				statement.setTimestamp(index, timestamp);
+			} else {
+				throw new IllegalArgumentException("Unsupported parameter type at " + index + ": " + value.getClass());
+			}
+		}
+	}
+
+	/** Trimmed {@code value}, or {@code null} when it is blank; the binding counterpart of an optional column. */
+	public static String nullable(String value) {
+		if (value == null) {
+			return null;
+		}
+		String trimmed = value.trim();
+		return trimmed.isEmpty() ? null : trimmed;
+	}
+
+	private static List<List<String>> readAll(ResultSet resultSet, boolean includeHeader) throws SQLException {
+		List<List<String>> results = new ArrayList<>();
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		int columnCount = metaData.getColumnCount();
+		if (includeHeader) {
+			List<String> header = new ArrayList<>(columnCount);
+			for (int i = 1; i <= columnCount; i++) {
+				header.add(metaData.getColumnName(i));
+			}
+			results.add(header);
+		}
+
+		while (resultSet.next()) {
+			List<String> row = new ArrayList<>(columnCount);
+			for (int i = 1; i <= columnCount; i++) {
+				row.add(resultSet.getString(i));
+			}
+			results.add(row);
+		}
+		return results;
+	}
+
+	/**
+	 * {@code INSERT INTO table (...)} over all {@link #ADDRESS_COLUMNS}, to be followed by a {@code VALUES} list or a
+	 * {@code SELECT} with one expression per column.
+	 */
+	public static String addressInsertInto(String table) {
+		return "INSERT INTO " + table + " (\n\t" + String.join(",\n\t", ADDRESS_COLUMNS) + "\n)\n";
+	}
+
 	public long ensureAddressTable(String table) throws SQLException {
-		String sql = """
-				IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='%s' AND xtype='U')
-				CREATE TABLE %s (
-					ID_FPR_PAYREL decimal(20,0) NOT NULL,
-					FPR_PAYEMENT_DOMAIN nvarchar(20) COLLATE French_CI_AS NULL,
-					FPR_ACCOUNT_OWNER_NAME nvarchar(70) COLLATE French_CI_AS NULL,
-					FPR_ACCOUNT_OWNER_ADRESS_LINE1 nvarchar(70) COLLATE French_CI_AS NULL,
-					FPR_ACCOUNT_OWNER_ADRESS_LINE2 nvarchar(70) COLLATE French_CI_AS NULL,
-					FPR_STREET nvarchar(32) COLLATE French_CI_AS NULL,
-					FPR_BUILDING_NUMBER nvarchar(11) COLLATE French_CI_AS NULL,
-					FPR_POST_CODE decimal(6,0) NULL,
-					FPR_TOWN_NAME nvarchar(29) COLLATE French_CI_AS NULL,
-					FPR_ACCOUNT_OWNER_ADDRESS_COUNTRY nvarchar(2) COLLATE French_CI_AS NULL,
-					FPR_ACCOUNT_TYPE nvarchar(10) COLLATE French_CI_AS NULL,
-					FPR_ACCOUNT_NO nvarchar(40) COLLATE French_CI_AS NULL,
-					FPR_CURRENCY nvarchar(3) COLLATE French_CI_AS NULL,
-					FPR_PAYMENT_POOL decimal(1,0) NULL,
-					FPR_ACCOUNT_NO_REF nvarchar(30) COLLATE French_CI_AS NULL,
-					FPR_VALIDITY_START date NOT NULL,
-					FPR_VALIDITY_END date NULL,
-					FPR_STATE nvarchar(10) COLLATE French_CI_AS NOT NULL,
-					FPR_SOURCE nvarchar(10) COLLATE French_CI_AS NULL,
-					FPR_VALID decimal(1,0) NULL,
-					FPR_USR_LOG_I nvarchar(15) COLLATE French_CI_AS NOT NULL,
-					FPR_DTE_LOG_I date NOT NULL,
-					FPR_USR_LOG_U nvarchar(15) COLLATE French_CI_AS NOT NULL,
-					FPR_DTE_LOG_U date NOT NULL,
-					OLD_TBL_ID varchar(64) NULL,
-					OLD_ID_ADRESSE decimal(15,0) NULL,
-					RIP_PERSON_ID decimal(10,0) NULL,
-					RIP_PERSON_BPC_ID decimal(10,0) NULL,
-					PAC_PAYEMENT_ADRESS_ID decimal(10,0) NULL,
-					PAC_VERSION_ADR decimal(4,0) NULL
-				)
-				""".formatted(table, table);
-		return executeNonQuery(sql);
+		return ensureAddressTable(table, "French_CI_AS");
+	}
+
+	/**
+	 * Creates the address table unless it exists, with {@code collation} on its text columns or the database default
+	 * when it is {@code null}, and indexes {@code OLD_TBL_ID} unless an index already starts with it. Linking, resume
+	 * cleanup and delta runs find addresses by that column, which would otherwise scan the whole table per chunk.
+	 * Both checks go through the JDBC metadata, so a stand-in database can create the same table.
+	 */
+	public long ensureAddressTable(String table, String collation) throws SQLException {
+		String collate = collation != null ? " COLLATE " + collation : "";
+		long created = 0;
+		if (!tableExists(table)) {
+			created = executeNonQuery("""
+					CREATE TABLE %1$s (
+						ID_FPR_PAYREL decimal(20,0) NOT NULL PRIMARY KEY,
+						FPR_PAYEMENT_DOMAIN nvarchar(20)%2$s NULL,
+						FPR_ACCOUNT_OWNER_NAME nvarchar(70)%2$s NULL,
+						FPR_ACCOUNT_OWNER_ADRESS_LINE1 nvarchar(70)%2$s NULL,
+						FPR_ACCOUNT_OWNER_ADRESS_LINE2 nvarchar(70)%2$s NULL,
+						FPR_STREET nvarchar(32)%2$s NULL,
+						FPR_BUILDING_NUMBER nvarchar(11)%2$s NULL,
+						FPR_POST_CODE decimal(6,0) NULL,
+						FPR_TOWN_NAME nvarchar(29)%2$s NULL,
+						FPR_ACCOUNT_OWNER_ADDRESS_COUNTRY nvarchar(2)%2$s NULL,
+						FPR_ACCOUNT_TYPE nvarchar(10)%2$s NULL,
+						FPR_ACCOUNT_NO nvarchar(40)%2$s NULL,
+						FPR_CURRENCY nvarchar(3)%2$s NULL,
+						FPR_PAYMENT_POOL decimal(1,0) NULL,
+						FPR_ACCOUNT_NO_REF nvarchar(30)%2$s NULL,
+						FPR_VALIDITY_START date NOT NULL,
+						FPR_VALIDITY_END date NULL,
+						FPR_STATE nvarchar(10)%2$s NOT NULL,
+						FPR_SOURCE nvarchar(10)%2$s NULL,
+						FPR_VALID decimal(1,0) NULL,
+						FPR_USR_LOG_I nvarchar(15)%2$s NOT NULL,
+						FPR_DTE_LOG_I date NOT NULL,
+						FPR_USR_LOG_U nvarchar(15)%2$s NOT NULL,
+						FPR_DTE_LOG_U date NOT NULL,
+						OLD_TBL_ID varchar(64) NULL,
+						OLD_ID_ADRESSE decimal(15,0) NULL,
+						RIP_PERSON_ID decimal(10,0) NULL,
+						RIP_PERSON_BPC_ID decimal(10,0) NULL,
+						PAC_PAYEMENT_ADRESS_ID decimal(10,0) NULL,
+						PAC_VERSION_ADR decimal(4,0) NULL
+					)
+					""".formatted(table, collate));
+		}
+		if (!leadingIndexColumn(table, "OLD_TBL_ID")) {
+			String name = table.substring(table.lastIndexOf('.') + 1);
+			executeNonQuery("CREATE INDEX IX_" + name + "_OLD_TBL_ID ON " + table + " (OLD_TBL_ID)");
+		}
+		return created;
 	}
 
-	public static String sqlQuote(String value) { return value.replace("'", "''"); }
+	private boolean tableExists(String table) throws SQLException {
+		try (PooledConnection pooled = acquire()) {
+			return findTable(pooled.connection().getMetaData(), table) != null;
+		}
+	}
 
-	public static String nullableQuoted(String value) {
-		if (value == null || value.trim().isEmpty()) {
-			return "NULL";
+	private boolean leadingIndexColumn(String table, String column) throws SQLException {
+		try (PooledConnection pooled = acquire()) {
+			DatabaseMetaData metaData = pooled.connection().getMetaData();
+			String[] found = findTable(metaData, table);
+			if (found == null) {
+				return false;
+			}
+			try (ResultSet indexes = metaData.getIndexInfo(found[0], found[1], found[2], false, true)) {
+				while (indexes.next()) {
+					if (indexes.getShort("ORDINAL_POSITION") == 1
+							&& column.equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) {
+						return true;
+					}
+				}
+			}
+			return false;
 		}
-		return "'" + sqlQuote(value.trim()) + "'";
 	}
 
-	public static String nullableRaw(String value) {
-		if (value == null || value.trim().isEmpty()) {
-			return "NULL";
+	/** Catalog, schema and name of {@code table} (optionally schema-qualified) as the database spells them. */
+	private static String[] findTable(DatabaseMetaData metaData, String table) throws SQLException {
+		int dot = table.lastIndexOf('.');
+		String schema = dot >= 0 ? table.substring(0, dot) : null;
+		String name = table.substring(dot + 1);
+		// The name is a LIKE pattern to the driver, so the underscores it may contain are matched exactly here
+		try (ResultSet tables = metaData.getTables(null, schema, name, new String[] { "TABLE" })) {
+			while (tables.next()) {
+				if (name.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+					return new String[] { tables.getString("TABLE_CAT"), tables.getString("TABLE_SCHEM"),
+							tables.getString("TABLE_NAME") };
+				}
+			}
 		}
-		return sqlQuote(value.trim());
+		return null;
 	}
 
-	private Connection openConnection() throws SQLException {
-		return DriverManager.getConnection(connectionString, user, password);
+	public long ensureIdSequence(String sequence, String table, String idColumn) throws SQLException {
+		String sql = """
+				IF OBJECT_ID(N'%s', N'SO') IS NULL
+				BEGIN
+					DECLARE @start decimal(20,0) = (SELECT ISNULL(MAX(%s), 0) + 1 FROM %s);
+					DECLARE @sql nvarchar(max) = N'CREATE SEQUENCE %s AS decimal(20,0) START WITH '
+						+ CAST(@start AS nvarchar(21)) + N' INCREMENT BY 1 NO CACHE';
+					EXEC sp_executesql @sql;
+				END
+				""".formatted(sequence, idColumn, table, sequence);
+		return executeNonQuery(sql);
 	}
 
+	public PooledConnection acquire() throws SQLException { return pool.acquire(); }
+
+	public LatencyHistogram.Snapshot acquireLatency() { return pool.acquireLatency().snapshot(); }
+
 	@Override
-	public void close() throws Exception {
-		// Nothing to close explicitly; connections are scoped per call
+	public void close() {
+		pool.close();
 	}
 }
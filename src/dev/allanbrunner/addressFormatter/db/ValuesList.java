@@ -0,0 +1,52 @@
+package dev.allanbrunner.addressFormatter.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Parameterized {@code VALUES} lists for set-based statements over a slice of keys. The row count is rounded up to
+ * one of a few fixed sizes, so chunks of varying length share a handful of statement texts, and with them the cached
+ * plans and pooled prepared statements, instead of compiling one per length. The extra rows are bound as
+ * {@code NULL}, which no join or key comparison matches.
+ */
+public final class ValuesList {
+	/** SQL Server accepts at most 2100 parameters per statement, which leaves room for two per row. */
+	public static final int MAX_ROWS = 1000;
+	private static final int[] SIZES = { 1, 10, 50, 200, MAX_ROWS };
+
+	private ValuesList() {
+	}
+
+	/** Smallest fixed size that holds {@code rows}. */
+	public static int rows(int rows) {
+		if (rows <= 0 || rows > MAX_ROWS) {
+			throw new IllegalArgumentException("Expected 1 to " + MAX_ROWS + " rows, got " + rows);
+		}
+		for (int size : SIZES) {
+			if (rows <= size) {
+				return size;
+			}
+		}
+		return MAX_ROWS;
+	}
+
+	/** {@code row} repeated {@code rows} times, comma-separated; {@code rows} is one of the fixed sizes. */
+	public static String of(int rows, String row) {
+		StringBuilder values = new StringBuilder(rows * (row.length() + 2));
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				values.append(", ");
+			}
+			values.append(row);
+		}
+		return values.toString();
+	}
+
+	/** Binds {@code NULL} to the placeholders from {@code parameter} up to and including {@code last}. */
+	public static void pad(PreparedStatement statement, int parameter, int last) throws SQLException {
+		for (int i = parameter; i <= last; i++) {
+			statement.setNull(i, Types.NVARCHAR);
+		}
+	}
+}
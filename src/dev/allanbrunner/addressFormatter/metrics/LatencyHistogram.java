@@ -0,0 +1,97 @@
+package dev.allanbrunner.addressFormatter.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear latency histogram. Values are grouped in buckets of four per power of two, each a quarter of
+ * the power wide. A percentile is reported as the upper bound of its bucket, so it overstates the true value by at
+ * most 25% (a value at the bottom of the lowest bucket of its power), while the whole histogram fits in a few hundred
+ * longs.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		double mean = total == 0 ? 0 : (double) sum.sum() / count.sum();
+		return new Snapshot(total, mean, percentile(copy, total, 0.50), percentile(copy, total, 0.90),
+				percentile(copy, total, 0.99), max.get());
+	}
+
+	private static long percentile(long[] counts, long total, double quantile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length - 1);
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lower = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public record Snapshot(long count, double meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+		@Override
+		public String toString() {
+			return String.format("n=%d mean=%s p50=%s p90=%s p99=%s max=%s", count, format((long) meanNanos),
+					format(p50Nanos), format(p90Nanos), format(p99Nanos), format(maxNanos));
+		}
+
+		private static String format(long nanos) {
+			if (nanos >= 1_000_000_000L) {
+				return String.format("%.2fs", nanos / 1e9);
+			}
+			if (nanos >= 1_000_000L) {
+				return String.format("%.1fms", nanos / 1e6);
+			}
+			if (nanos >= 1_000L) {
+				return String.format("%.1fus", nanos / 1e3);
+			}
+			return nanos + "ns";
+		}
+	}
+}
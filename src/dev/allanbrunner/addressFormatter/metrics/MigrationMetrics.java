@@ -0,0 +1,63 @@
+package dev.allanbrunner.addressFormatter.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Row counters and latency histograms for each {@link Stage} of a migration. Chunk-level measurements are also
+ * emitted as {@code dev.allanbrunner.addressFormatter.Stage} JFR events.
+ */
+public final class MigrationMetrics {
+	private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+	private final Map<Stage, LongAdder> rows = new EnumMap<>(Stage.class);
+	private final long startNanos = System.nanoTime();
+
+	public MigrationMetrics() {
+		for (Stage stage : Stage.values()) {
+			latencies.put(stage, new LatencyHistogram());
+			rows.put(stage, new LongAdder());
+		}
+	}
+
+	/** Records a measurement that started at {@code startNanos} (from {@link System#nanoTime()}) and ends now. */
+	public void record(Stage stage, long startNanos, int rowCount) {
+		long endNanos = System.nanoTime();
+		latencies.get(stage).record(endNanos - startNanos);
+		rows.get(stage).add(rowCount);
+
+		if (stage.chunked()) {
+			StageEvent event = new StageEvent();
+			if (event.shouldCommit()) {
+				event.stage = stage.name();
+				event.rows = rowCount;
+				event.elapsed = endNanos - startNanos;
+				event.commit();
+			}
+		}
+	}
+
+	public long rows(Stage stage) {
+		return rows.get(stage).sum();
+	}
+
+	public LatencyHistogram.Snapshot latency(Stage stage) {
+		return latencies.get(stage).snapshot();
+	}
+
+	public double elapsedSeconds() {
+		return (System.nanoTime() - startNanos) / 1e9;
+	}
+
+	public String summary() {
+		double seconds = elapsedSeconds();
+		long linked = rows(Stage.LINK);
+		StringBuilder summary = new StringBuilder(String.format("%.0fs elapsed, %d rows done (%.0f rows/s)", seconds,
+				linked, seconds > 0 ? linked / seconds : 0));
+		for (Stage stage : Stage.values()) {
+			summary.append(String.format("%n  %-7s rows=%d %s", stage.name().toLowerCase(), rows(stage),
+					latency(stage)));
+		}
+		return summary.toString();
+	}
+}
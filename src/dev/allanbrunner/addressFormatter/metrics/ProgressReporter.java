@@ -0,0 +1,37 @@
+package dev.allanbrunner.addressFormatter.metrics;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/** Prints a progress summary at a fixed interval from a daemon thread, and once more when closed. */
+public final class ProgressReporter implements AutoCloseable {
+	private final Supplier<String> summary;
+	private final PrintStream out;
+	private final ScheduledExecutorService scheduler;
+
+	public ProgressReporter(Supplier<String> summary, Duration interval, PrintStream out) {
+		this.summary = summary;
+		this.out = out;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "progress-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long millis = interval.toMillis();
+		scheduler.scheduleAtFixedRate(this::report, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	private void report() {
+		out.println(summary.get());
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		report();
+	}
+}
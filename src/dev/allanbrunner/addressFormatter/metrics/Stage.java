@@ -0,0 +1,14 @@
+package dev.allanbrunner.addressFormatter.metrics;
+
+public enum Stage {
+	READ(false), FORMAT(false), INSERT(true), LINK(true);
+
+	private final boolean chunked;
+
+	Stage(boolean chunked) {
+		this.chunked = chunked;
+	}
+
+	/** Whether one measurement covers a whole chunk of rows rather than a single row. */
+	public boolean chunked() { return chunked; }
+}
@@ -0,0 +1,25 @@
+package dev.allanbrunner.addressFormatter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("dev.allanbrunner.addressFormatter.Stage")
+@Label("Migration Stage")
+@Description("One chunk processed by a migration stage")
+@Category("Address Formatter")
+@StackTrace(false)
+final class StageEvent extends jdk.jfr.Event {
+	@Label("Stage")
+	String stage;
+
+	@Label("Rows")
+	int rows;
+
+	@Label("Elapsed")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
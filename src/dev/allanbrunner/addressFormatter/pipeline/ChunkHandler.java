@@ -0,0 +1,10 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.List;
+
+import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+
+@FunctionalInterface
+public interface ChunkHandler {
+	void handle(List<StructuredAddress> chunk) throws Exception;
+}
@@ -0,0 +1,132 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+import dev.allanbrunner.addressFormatter.address.AddressDeduplicator;
+import dev.allanbrunner.addressFormatter.address.AddressLinkUpdater;
+import dev.allanbrunner.addressFormatter.address.AddressSink;
+import dev.allanbrunner.addressFormatter.address.DeadLetterWriter;
+import dev.allanbrunner.addressFormatter.address.DeltaTracker;
+import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+import dev.allanbrunner.addressFormatter.db.AdaptiveBatchSize;
+import dev.allanbrunner.addressFormatter.metrics.MigrationMetrics;
+import dev.allanbrunner.addressFormatter.metrics.Stage;
+
+/**
+ * Writes one chunk of formatted addresses and links the source rows to them. Rows the sink rejects are quarantined by
+ * the {@link DeadLetterWriter} and left unlinked. The optional stages are {@code null} when they are not in use.
+ */
+public final class ChunkWriter {
+	private final AddressSink sink;
+	private final AddressLinkUpdater linker;
+	private final DeltaTracker delta;
+	private final AddressDeduplicator dedup;
+	private final DeadLetterWriter deadLetters;
+	private final MigrationMetrics metrics;
+	private final AdaptiveBatchSize batchSize;
+
+	public ChunkWriter(AddressSink sink, AddressLinkUpdater linker, DeltaTracker delta, AddressDeduplicator dedup,
+			DeadLetterWriter deadLetters, MigrationMetrics metrics) {
+		this(sink, linker, delta, dedup, deadLetters, metrics, null);
+	}
+
+	/** {@code batchSize}, when not {@code null}, is fed the latency of every chunk the sink writes. */
+	public ChunkWriter(AddressSink sink, AddressLinkUpdater linker, DeltaTracker delta, AddressDeduplicator dedup,
+			DeadLetterWriter deadLetters, MigrationMetrics metrics, AdaptiveBatchSize batchSize) {
+		this.sink = Objects.requireNonNull(sink, "sink");
+		if (sink.linkable() && linker == null) {
+			throw new IllegalArgumentException("A linkable sink needs a linker");
+		}
+		if (dedup != null && !sink.acceptsAssignedIds()) {
+			throw new IllegalArgumentException("Deduplication needs a sink that takes assigned ids");
+		}
+		this.linker = linker;
+		this.delta = delta;
+		this.dedup = dedup;
+		this.deadLetters = deadLetters;
+		this.metrics = Objects.requireNonNull(metrics, "metrics");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the source ids of the whole chunk, quarantined rows included, since rerunning them would not help; or
+	 * {@code null} when the sink cannot be linked.
+	 */
+	public List<String> write(List<StructuredAddress> chunk) throws Exception {
+		if (delta != null) {
+			delta.lookUpSuperseded(chunk);
+		}
+
+		long start = System.nanoTime();
+		AddressDeduplicator.Assignment assignment = null;
+		BitSet failed;
+		if (dedup != null) {
+			assignment = dedup.assign(chunk);
+			failed = write(assignment.distinct(), assignment.distinctIds());
+			for (int i = failed.nextSetBit(0); i >= 0; i = failed.nextSetBit(i + 1)) {
+				dedup.reject(assignment.distinctIds()[i]);
+			}
+			metrics.record(Stage.INSERT, start, assignment.distinct().size() - failed.cardinality());
+		} else {
+			failed = write(chunk, null);
+			metrics.record(Stage.INSERT, start, chunk.size() - failed.cardinality());
+		}
+		if (batchSize != null) {
+			batchSize.record(chunk.size(), System.nanoTime() - start);
+		}
+
+		if (!sink.linkable()) {
+			return null;
+		}
+		List<String> ids = new ArrayList<>(chunk.size());
+		for (StructuredAddress structured : chunk) {
+			ids.add(structured.id());
+		}
+
+		List<StructuredAddress> linked = new ArrayList<>(chunk.size());
+		List<StructuredAddress> rejected = new ArrayList<>();
+		List<String> linkedIds = new ArrayList<>(chunk.size());
+		long[] addressIds = new long[chunk.size()];
+		for (int i = 0; i < chunk.size(); i++) {
+			boolean written = assignment != null ? !dedup.isRejected(assignment.addressIds()[i]) : !failed.get(i);
+			if (written) {
+				if (assignment != null) {
+					addressIds[linked.size()] = assignment.addressIds()[i];
+				}
+				linked.add(chunk.get(i));
+				linkedIds.add(ids.get(i));
+			} else {
+				rejected.add(chunk.get(i));
+			}
+		}
+
+		start = System.nanoTime();
+		if (assignment != null) {
+			linker.link(linkedIds, Arrays.copyOf(addressIds, linked.size()));
+		} else {
+			linker.link(linkedIds);
+		}
+		metrics.record(Stage.LINK, start, linkedIds.size());
+		if (delta != null) {
+			delta.discard(rejected);
+			delta.record(linked);
+		}
+		return ids;
+	}
+
+	private BitSet write(List<StructuredAddress> rows, long[] ids) throws Exception {
+		if (deadLetters != null) {
+			return deadLetters.write(sink, rows, ids);
+		}
+		if (ids == null) {
+			sink.write(rows);
+		} else {
+			sink.write(rows, ids);
+		}
+		return new BitSet();
+	}
+}
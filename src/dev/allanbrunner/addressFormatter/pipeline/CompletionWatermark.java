@@ -0,0 +1,33 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Tracks the highest source key below which every row has been completed. Keys are registered in source order as they
+ * are read and completed in whatever order the pipeline finishes them; only in-flight keys are held in memory.
+ */
+public final class CompletionWatermark {
+	private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+	private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+	public void emitted(String key) {
+		pending.add(key);
+	}
+
+	/** Marks the keys as done and returns the new watermark, or {@code null} if it did not move. */
+	public synchronized String complete(Collection<String> keys) {
+		completed.addAll(keys);
+
+		String watermark = null;
+		String head;
+		while ((head = pending.peek()) != null && completed.remove(head)) {
+			pending.poll();
+			watermark = head;
+		}
+		return watermark;
+	}
+}
@@ -0,0 +1,157 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import dev.allanbrunner.addressFormatter.metrics.MigrationMetrics;
+import dev.allanbrunner.addressFormatter.metrics.Stage;
+
+/**
+ * Runs several {@link MigrationJob}s at once on a fixed number of job slots, so the migration takes about as long as
+ * its slowest job rather than the sum of all of them. Jobs start in the order given, which makes putting the largest
+ * ones first worthwhile when there are more jobs than slots. Every running job gets an equal share of the formatter
+ * thread budget, and all of them draw on the same connection pool, whose fair queue serves them in arrival order.
+ * <p>
+ * Jobs migrate separate tables, so a failing job does not stop the others; the failures are thrown together once
+ * every job has finished.
+ */
+public final class JobScheduler {
+	public enum State {
+		PENDING, RUNNING, DONE, FAILED
+	}
+
+	/** Migrates one job and returns the number of rows processed. */
+	@FunctionalInterface
+	public interface JobRunner {
+		long run(MigrationJob job, int formatterThreads, MigrationMetrics metrics) throws Exception;
+	}
+
+	private final int slots;
+	private final int formatterBudget;
+	private volatile Entry[] entries = new Entry[0];
+
+	public JobScheduler(int slots, int formatterBudget) {
+		if (slots <= 0) {
+			throw new IllegalArgumentException("slots must be positive");
+		}
+		if (formatterBudget <= 0) {
+			throw new IllegalArgumentException("formatterBudget must be positive");
+		}
+		this.slots = slots;
+		this.formatterBudget = formatterBudget;
+	}
+
+	/** Number of formatter threads each job gets when {@code jobCount} jobs are scheduled. */
+	public int formatterShare(int jobCount) {
+		return Math.max(1, formatterBudget / Math.max(1, Math.min(slots, jobCount)));
+	}
+
+	public long run(List<MigrationJob> jobs, JobRunner runner) throws Exception {
+		Entry[] scheduled = new Entry[jobs.size()];
+		for (int i = 0; i < scheduled.length; i++) {
+			scheduled[i] = new Entry(jobs.get(i));
+		}
+		entries = scheduled;
+
+		int share = formatterShare(jobs.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(slots, jobs.size())), r -> {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<Future<Long>> futures = new ArrayList<>(scheduled.length);
+		for (Entry entry : scheduled) {
+			futures.add(executor.submit(() -> {
+				Thread.currentThread().setName("job-" + entry.job.name());
+				return entry.run(runner, share);
+			}));
+		}
+
+		long processed = 0;
+		Exception failure = null;
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					processed += futures.get(i).get();
+				} catch (ExecutionException e) {
+					Exception cause = e.getCause() instanceof Exception ex ? ex : new ExecutionException(e.getCause());
+					if (failure == null) {
+						failure = new Exception("Job " + scheduled[i].job.name() + " failed: " + cause.getMessage(),
+								cause);
+					} else {
+						failure.addSuppressed(cause);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<Long> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return processed;
+	}
+
+	/** One line per job with its state, rows written, throughput and run time. */
+	public String progress() {
+		StringBuilder progress = new StringBuilder();
+		for (Entry entry : entries) {
+			if (progress.length() > 0) {
+				progress.append(String.format("%n"));
+			}
+			double seconds = entry.seconds();
+			long rows = entry.metrics.rows(Stage.INSERT);
+			progress.append(String.format("  job %-16s %-7s rows=%d %.0f rows/s %.0fs %s->%s", entry.job.name(),
+					entry.state.name().toLowerCase(), rows, seconds > 0 ? rows / seconds : 0, seconds,
+					entry.job.sourceTable(), entry.job.targetTable()));
+		}
+		return progress.toString();
+	}
+
+	private static final class Entry {
+		final MigrationJob job;
+		final MigrationMetrics metrics = new MigrationMetrics();
+		volatile State state = State.PENDING;
+		volatile long startNanos;
+		volatile long endNanos;
+
+		Entry(MigrationJob job) {
+			this.job = job;
+		}
+
+		long run(JobRunner runner, int formatterThreads) throws Exception {
+			startNanos = System.nanoTime();
+			state = State.RUNNING;
+			try {
+				long rows = runner.run(job, formatterThreads, metrics);
+				state = State.DONE;
+				return rows;
+			} catch (Exception | Error e) {
+				state = State.FAILED;
+				throw e;
+			} finally {
+				endNanos = System.nanoTime();
+			}
+		}
+
+		double seconds() {
+			long start = startNanos;
+			if (start == 0) {
+				return 0;
+			}
+			long end = endNanos;
+			return ((end != 0 ? end : System.nanoTime()) - start) / 1e9;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * One source table to migrate: where the raw address lines come from, which table receives the structured addresses
+ * and which column of which table is linked back to them.
+ */
+public record MigrationJob(String name, String sourceTable, String idColumn, List<String> lineColumns,
+		String targetTable, Link link) {
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+	// Table and column names end up in SQL text, so only plain (optionally schema-qualified) identifiers are accepted
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+	private static final int MAX_LINES = 6;
+
+	/** Sets {@code addressColumn} of the {@code table} row whose {@code keyColumn} is the source id. */
+	public record Link(String table, String keyColumn, String addressColumn) {
+		public Link {
+			identifier("link table", table);
+			identifier("link key column", keyColumn);
+			identifier("link address column", addressColumn);
+		}
+	}
+
+	public MigrationJob {
+		if (name == null || !NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid job name '" + name + "'");
+		}
+		identifier("source table", sourceTable);
+		identifier("id column", idColumn);
+		identifier("target table", targetTable);
+		Objects.requireNonNull(link, "link");
+		lineColumns = List.copyOf(lineColumns);
+		if (lineColumns.isEmpty() || lineColumns.size() > MAX_LINES) {
+			throw new IllegalArgumentException("Job " + name + " needs 1 to " + MAX_LINES + " line columns");
+		}
+		for (String column : lineColumns) {
+			identifier("line column", column);
+		}
+	}
+
+	/** Key of this job's progress in a {@link ProgressJournal}. */
+	public String checkpointKey() {
+		return sourceTable + "->" + targetTable;
+	}
+
+	public String[] lineColumnArray() {
+		return lineColumns.toArray(new String[0]);
+	}
+
+	/**
+	 * Reads job definitions from a file of {@code <job>.<property>=<value>} lines, in the order the jobs first appear.
+	 * Blank lines and lines starting with {@code #} are skipped. Every job needs {@code source}, {@code id},
+	 * {@code lines} (comma-separated), {@code target}, {@code link.table}, {@code link.key} and {@code link.column}.
+	 * No two jobs may have the same target.
+	 */
+	public static List<MigrationJob> load(Path file) throws IOException {
+		Map<String, Map<String, String>> properties = new LinkedHashMap<>();
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		for (int i = 0; i < lines.size(); i++) {
+			String trimmed = lines.get(i).trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				continue;
+			}
+			int equalsIndex = trimmed.indexOf('=');
+			int dotIndex = trimmed.indexOf('.');
+			if (equalsIndex <= 0 || dotIndex <= 0 || dotIndex > equalsIndex) {
+				throw new IllegalStateException(file + ":" + (i + 1) + ": expected <job>.<property>=<value>");
+			}
+			String job = trimmed.substring(0, dotIndex).trim();
+			String key = trimmed.substring(dotIndex + 1, equalsIndex).trim();
+			properties.computeIfAbsent(job, j -> new LinkedHashMap<>()).put(key,
+					trimmed.substring(equalsIndex + 1).trim());
+		}
+
+		List<MigrationJob> jobs = new ArrayList<>(properties.size());
+		// Addresses are found again by OLD_TBL_ID alone when linking, resuming, tracking deltas and reconciling, so the
+		// ids of two source tables must not meet in one target table
+		Set<String> targets = new HashSet<>();
+		for (Map.Entry<String, Map<String, String>> entry : properties.entrySet()) {
+			String name = entry.getKey();
+			Map<String, String> values = entry.getValue();
+			List<String> lineColumns = new ArrayList<>();
+			for (String column : require(name, values, "lines").split(",")) {
+				lineColumns.add(column.trim());
+			}
+			MigrationJob job = new MigrationJob(name, require(name, values, "source"), require(name, values, "id"),
+					lineColumns, require(name, values, "target"), new Link(require(name, values, "link.table"),
+							require(name, values, "link.key"), require(name, values, "link.column")));
+			if (!values.isEmpty()) {
+				throw new IllegalStateException("Unknown properties for job " + name + ": " + values.keySet());
+			}
+			if (!targets.add(job.targetTable().toUpperCase(Locale.ROOT))) {
+				throw new IllegalStateException("Job " + name + " writes to " + job.targetTable()
+						+ ", which another job already writes to");
+			}
+			jobs.add(job);
+		}
+		if (jobs.isEmpty()) {
+			throw new IllegalStateException("No jobs defined in " + file);
+		}
+		return jobs;
+	}
+
+	private static String require(String job, Map<String, String> values, String key) {
+		String value = values.remove(key);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalStateException(job + "." + key + " must be set");
+		}
+		return value;
+	}
+
+	private static void identifier(String what, String value) {
+		if (value == null || !IDENTIFIER.matcher(value).matches()) {
+			throw new IllegalArgumentException("Invalid " + what + " '" + value + "'");
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import dev.allanbrunner.addressFormatter.address.AddressLine;
+import dev.allanbrunner.addressFormatter.address.PostalCode;
+import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+import dev.allanbrunner.addressFormatter.address.UnstructuredAddress;
+import dev.allanbrunner.addressFormatter.db.AdaptiveBatchSize;
+import dev.allanbrunner.addressFormatter.metrics.MigrationMetrics;
+import dev.allanbrunner.addressFormatter.metrics.Stage;
+
+/**
+ * Reader, formatter and writer pipeline. The reader and a pool of formatter workers run on their own threads and are
+ * connected by bounded queues, so a slow writer throttles the whole pipeline instead of filling the heap. The writer
+ * stage runs on the calling thread and hands completed chunks to a {@link ChunkHandler}.
+ */
+public final class MigrationPipeline {
+	private static final UnstructuredAddress END_OF_INPUT = new UnstructuredAddress("",
+			new String[] { "", "", "", "", "", "" });
+	private static final StructuredAddress END_OF_OUTPUT = new StructuredAddress("", null, null, null, null, null, null,
+			AddressLine.street("", ""), new PostalCode(0, null), "", "");
+	private static final long POLL_MILLIS = 50;
+
+	private final PipelineConfig config;
+	private final MigrationMetrics metrics;
+	private final AdaptiveBatchSize chunkSize;
+
+	public MigrationPipeline(PipelineConfig config) {
+		this(config, new MigrationMetrics());
+	}
+
+	public MigrationPipeline(PipelineConfig config, MigrationMetrics metrics) {
+		this(config, metrics, AdaptiveBatchSize.fixed("write", config.chunkSize()));
+	}
+
+	/** Cuts chunks at whatever size {@code chunkSize} holds when a chunk fills up, instead of the configured one. */
+	public MigrationPipeline(PipelineConfig config, MigrationMetrics metrics, AdaptiveBatchSize chunkSize) {
+		this.config = Objects.requireNonNull(config, "config");
+		this.metrics = Objects.requireNonNull(metrics, "metrics");
+		this.chunkSize = Objects.requireNonNull(chunkSize, "chunkSize");
+	}
+
+	public long run(Iterator<UnstructuredAddress> source, Function<UnstructuredAddress, StructuredAddress> formatter,
+			ChunkHandler handler) throws Exception {
+		BlockingQueue<UnstructuredAddress> input = new ArrayBlockingQueue<>(config.queueCapacity());
+		BlockingQueue<StructuredAddress> output = new ArrayBlockingQueue<>(config.queueCapacity());
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicInteger runningFormatters = new AtomicInteger(config.formatterThreads());
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(config.formatterThreads() + 1, r -> {
+			Thread thread = new Thread(r, "pipeline-" + threadIndex.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		executor.execute(() -> {
+			try {
+				while (true) {
+					long start = System.nanoTime();
+					if (!source.hasNext()) {
+						break;
+					}
+					UnstructuredAddress raw = source.next();
+					metrics.record(Stage.READ, start, 1);
+					input.put(raw);
+				}
+				input.put(END_OF_INPUT);
+			} catch (Throwable t) {
+				fail(failure, t, executor);
+			}
+		});
+
+		for (int i = 0; i < config.formatterThreads(); i++) {
+			executor.execute(() -> {
+				try {
+					while (true) {
+						UnstructuredAddress raw = input.take();
+						if (raw == END_OF_INPUT) {
+							input.put(END_OF_INPUT);
+							break;
+						}
+						long start = System.nanoTime();
+						StructuredAddress structured = formatter.apply(raw);
+						metrics.record(Stage.FORMAT, start, 1);
+						output.put(structured);
+					}
+					if (runningFormatters.decrementAndGet() == 0) {
+						output.put(END_OF_OUTPUT);
+					}
+				} catch (Throwable t) {
+					fail(failure, t, executor);
+				}
+			});
+		}
+
+		long processed = 0;
+		try {
+			List<StructuredAddress> chunk = new ArrayList<>(chunkSize.current());
+			while (failure.get() == null) {
+				StructuredAddress structured = output.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (structured == null) {
+					continue;
+				}
+				if (structured == END_OF_OUTPUT) {
+					break;
+				}
+				chunk.add(structured);
+				if (chunk.size() >= chunkSize.current()) {
+					handler.handle(chunk);
+					processed += chunk.size();
+					chunk.clear();
+				}
+			}
+			if (failure.get() == null && !chunk.isEmpty()) {
+				handler.handle(chunk);
+				processed += chunk.size();
+			}
+		} catch (Throwable t) {
+			fail(failure, t, executor);
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		Throwable error = failure.get();
+		if (error instanceof Exception e) {
+			throw e;
+		}
+		if (error instanceof Error e) {
+			throw e;
+		}
+		return processed;
+	}
+
+	private static void fail(AtomicReference<Throwable> failure, Throwable t, ExecutorService executor) {
+		if (failure.compareAndSet(null, t)) {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+public record PipelineConfig(int formatterThreads, int queueCapacity, int chunkSize) {
+	public PipelineConfig {
+		if (formatterThreads <= 0) {
+			throw new IllegalArgumentException("formatterThreads must be positive");
+		}
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("queueCapacity must be positive");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive");
+		}
+	}
+
+	public static PipelineConfig defaults(int chunkSize) {
+		return new PipelineConfig(Runtime.getRuntime().availableProcessors(), chunkSize * 4, chunkSize);
+	}
+}
@@ -0,0 +1,80 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Append-only, fsync'd journal of the last committed source key per job. Each commit appends one
+ * {@code job<TAB>key} line, so a crash can at worst lose the line being written; the last complete line per job wins.
+ * The file is compacted to one line per job when it is opened.
+ */
+public final class ProgressJournal implements AutoCloseable {
+	private final Map<String, String> committed;
+	private final FileChannel channel;
+
+	private ProgressJournal(Map<String, String> committed, FileChannel channel) {
+		this.committed = committed;
+		this.channel = channel;
+	}
+
+	public static ProgressJournal open(Path path) throws IOException {
+		Map<String, String> committed = new LinkedHashMap<>();
+		if (Files.exists(path)) {
+			String content = Files.readString(path, StandardCharsets.UTF_8);
+			// A line without its terminating newline was torn by a crash and is ignored
+			for (String line : content.substring(0, content.lastIndexOf('\n') + 1).split("\n")) {
+				int tab = line.indexOf('\t');
+				if (tab > 0 && tab < line.length() - 1) {
+					committed.put(line.substring(0, tab), line.substring(tab + 1));
+				}
+			}
+		}
+
+		StringBuilder compacted = new StringBuilder();
+		committed.forEach((job, key) -> compacted.append(job).append('\t').append(key).append('\n'));
+		Path parent = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+		// The compacted lines must be on disk before the rename makes them the journal, or a crash could leave it empty
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			ByteBuffer bytes = ByteBuffer.wrap(compacted.toString().getBytes(StandardCharsets.UTF_8));
+			while (bytes.hasRemaining()) {
+				out.write(bytes);
+			}
+			out.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		return new ProgressJournal(committed, channel);
+	}
+
+	public synchronized Optional<String> lastCommitted(String job) {
+		return Optional.ofNullable(committed.get(job));
+	}
+
+	public synchronized void commit(String job, String key) throws IOException {
+		if (job.indexOf('\t') >= 0 || job.indexOf('\n') >= 0 || key.indexOf('\n') >= 0) {
+			throw new IllegalArgumentException("Job names and keys must not contain tabs or line breaks");
+		}
+		ByteBuffer line = ByteBuffer.wrap((job + "\t" + key + "\n").getBytes(StandardCharsets.UTF_8));
+		while (line.hasRemaining()) {
+			channel.write(line);
+		}
+		channel.force(false);
+		committed.put(job, key);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+}
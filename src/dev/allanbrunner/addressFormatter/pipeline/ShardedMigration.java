@@ -0,0 +1,160 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import dev.allanbrunner.addressFormatter.address.KeyRange;
+import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+import dev.allanbrunner.addressFormatter.address.UnstructuredAddress;
+import dev.allanbrunner.addressFormatter.db.AdaptiveBatchSize;
+import dev.allanbrunner.addressFormatter.metrics.MigrationMetrics;
+import dev.allanbrunner.addressFormatter.metrics.Stage;
+
+/**
+ * Runs one read-format-write loop per source key range on a fixed pool of worker threads. Shards share nothing but the
+ * connection pool and the metrics, and each one reports its own progress; the first failing shard stops the others.
+ */
+public final class ShardedMigration {
+	public enum State {
+		PENDING, RUNNING, DONE, FAILED, CANCELLED
+	}
+
+	private final AdaptiveBatchSize chunkSize;
+	private final MigrationMetrics metrics;
+	private volatile Shard[] shards = new Shard[0];
+
+	public ShardedMigration(int chunkSize, MigrationMetrics metrics) {
+		this(AdaptiveBatchSize.fixed("write", chunkSize), metrics);
+	}
+
+	public ShardedMigration(AdaptiveBatchSize chunkSize, MigrationMetrics metrics) {
+		this.chunkSize = Objects.requireNonNull(chunkSize, "chunkSize");
+		this.metrics = Objects.requireNonNull(metrics, "metrics");
+	}
+
+	/**
+	 * Migrates every range and returns the number of rows handed to the handlers. {@code handlers} is asked once per
+	 * shard index; each handler only ever sees its own shard's chunks, in key order.
+	 */
+	public long run(List<KeyRange> ranges, Function<KeyRange, Iterator<UnstructuredAddress>> sources,
+			Function<UnstructuredAddress, StructuredAddress> formatter, IntFunction<ChunkHandler> handlers)
+			throws Exception {
+		Shard[] started = new Shard[ranges.size()];
+		for (int i = 0; i < started.length; i++) {
+			started[i] = new Shard(i, ranges.get(i));
+		}
+		shards = started;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, started.length), r -> {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		});
+		ExecutorCompletionService<Long> completion = new ExecutorCompletionService<>(executor);
+		List<Future<Long>> futures = new ArrayList<>(started.length);
+		for (Shard shard : started) {
+			futures.add(completion.submit(() -> {
+				Thread.currentThread().setName("shard-" + shard.index);
+				return shard.run(sources.apply(shard.range), formatter, handlers.apply(shard.index));
+			}));
+		}
+
+		long processed = 0;
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				processed += completion.take().get();
+			}
+		} catch (ExecutionException e) {
+			for (Future<Long> future : futures) {
+				future.cancel(true);
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception ex) {
+				throw ex;
+			}
+			throw (Error) cause;
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		return processed;
+	}
+
+	/** One line per shard with its range, state, row count and last completed key. */
+	public String progress() {
+		StringBuilder progress = new StringBuilder();
+		for (Shard shard : shards) {
+			if (progress.length() > 0) {
+				progress.append(String.format("%n"));
+			}
+			progress.append(String.format("  shard %-3d %-9s rows=%d last=%s range=%s", shard.index,
+					shard.state.name().toLowerCase(), shard.rows, shard.lastKey, shard.range));
+		}
+		return progress.toString();
+	}
+
+	private final class Shard {
+		final int index;
+		final KeyRange range;
+		volatile State state = State.PENDING;
+		volatile long rows;
+		volatile String lastKey;
+
+		Shard(int index, KeyRange range) {
+			this.index = index;
+			this.range = range;
+		}
+
+		long run(Iterator<UnstructuredAddress> source, Function<UnstructuredAddress, StructuredAddress> formatter,
+				ChunkHandler handler) throws Exception {
+			state = State.RUNNING;
+			try {
+				List<StructuredAddress> chunk = new ArrayList<>(chunkSize.current());
+				while (true) {
+					if (Thread.interrupted()) {
+						throw new InterruptedException("Shard " + index + " cancelled");
+					}
+					long start = System.nanoTime();
+					if (!source.hasNext()) {
+						break;
+					}
+					UnstructuredAddress raw = source.next();
+					metrics.record(Stage.READ, start, 1);
+
+					start = System.nanoTime();
+					chunk.add(formatter.apply(raw));
+					metrics.record(Stage.FORMAT, start, 1);
+
+					if (chunk.size() >= chunkSize.current()) {
+						flush(chunk, handler);
+					}
+				}
+				if (!chunk.isEmpty()) {
+					flush(chunk, handler);
+				}
+				state = State.DONE;
+				return rows;
+			} catch (Exception | Error e) {
+				state = e instanceof InterruptedException ? State.CANCELLED : State.FAILED;
+				throw e;
+			}
+		}
+
+		private void flush(List<StructuredAddress> chunk, ChunkHandler handler) throws Exception {
+			handler.handle(chunk);
+			rows += chunk.size();
+			lastKey = chunk.get(chunk.size() - 1).id();
+			chunk.clear();
+		}
+	}
+}
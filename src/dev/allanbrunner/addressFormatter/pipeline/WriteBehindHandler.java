@@ -0,0 +1,103 @@
+package dev.allanbrunner.addressFormatter.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import dev.allanbrunner.addressFormatter.address.StructuredAddress;
+
+/**
+ * Hands chunks to a background thread that runs the wrapped handler, so the next chunk is collected and formatted
+ * while the previous one commits. At most {@code depth} chunks wait behind the one being written; chunks are handled
+ * in order. A failure is thrown by the next {@link #handle} call or by {@link #close}, which waits for the backlog and
+ * wraps a checked failure in an {@link ExecutionException}.
+ */
+public final class WriteBehindHandler implements ChunkHandler, AutoCloseable {
+	private static final List<StructuredAddress> END = List.of();
+
+	private final ChunkHandler delegate;
+	private final BlockingQueue<List<StructuredAddress>> backlog;
+	private final Thread worker;
+	private volatile Throwable failure;
+	private boolean failureThrown;
+
+	public WriteBehindHandler(ChunkHandler delegate, int depth) {
+		if (depth <= 0) {
+			throw new IllegalArgumentException("depth must be positive");
+		}
+		this.delegate = Objects.requireNonNull(delegate, "delegate");
+		this.backlog = new ArrayBlockingQueue<>(depth);
+		this.worker = new Thread(this::drain, "write-behind");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	@Override
+	public void handle(List<StructuredAddress> chunk) throws Exception {
+		rethrow();
+		// The pipeline reuses its chunk list once this returns
+		List<StructuredAddress> copy = new ArrayList<>(chunk);
+		while (!backlog.offer(copy, 50, TimeUnit.MILLISECONDS)) {
+			rethrow();
+		}
+	}
+
+	/**
+	 * Waits until the backlog is written. When interrupted it stops the worker, restores the interrupt flag and throws
+	 * a {@link CancellationException}, since the chunks still queued were not written.
+	 */
+	@Override
+	public void close() throws ExecutionException {
+		try {
+			while (worker.isAlive() && !backlog.offer(END, 50, TimeUnit.MILLISECONDS)) {
+				// A worker that stopped on a failure no longer makes room
+			}
+			worker.join();
+		} catch (InterruptedException e) {
+			worker.interrupt();
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while the write-behind backlog was being written");
+		}
+		try {
+			rethrow();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ExecutionException(e);
+		}
+	}
+
+	private void drain() {
+		try {
+			while (true) {
+				List<StructuredAddress> chunk = backlog.take();
+				if (chunk == END) {
+					return;
+				}
+				delegate.handle(chunk);
+			}
+		} catch (Throwable t) {
+			failure = t;
+		}
+	}
+
+	/** Throws the worker's failure, but only once, so close() does not suppress the exception with itself. */
+	private void rethrow() throws Exception {
+		Throwable t = failure;
+		if (t == null || failureThrown) {
+			return;
+		}
+		failureThrown = true;
+		if (t instanceof Exception e) {
+			throw e;
+		}
+		if (t instanceof Error e) {
+			throw e;
+		}
+	}
+}
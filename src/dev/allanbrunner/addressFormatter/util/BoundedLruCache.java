@@ -0,0 +1,89 @@
+package dev.allanbrunner.addressFormatter.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Size-bounded LRU cache split into independently locked segments so concurrent callers rarely contend. Each segment
+ * evicts its own least recently used entry, so the bound is approximate across segments.
+ */
+public final class BoundedLruCache<K, V> {
+	private final Segment<K, V>[] segments;
+	private final int segmentMask;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BoundedLruCache(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(64, maximumSize / 64)));
+		int segmentCapacity = Math.max(1, maximumSize / segmentCount);
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment<>(segmentCapacity, evictions);
+		}
+		this.segmentMask = segmentCount - 1;
+	}
+
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+		Segment<K, V> segment = segmentFor(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value != null) {
+			hits.increment();
+			return value;
+		}
+
+		misses.increment();
+		value = loader.apply(key);
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+		return value;
+	}
+
+	public CacheStats stats() {
+		long size = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return segments[hash & segmentMask];
+	}
+
+	private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		private final transient LongAdder evictions;
+
+		Segment(int capacity, LongAdder evictions) {
+			super(Math.min(capacity, 1024), 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package dev.allanbrunner.addressFormatter.util;
+
+public record CacheStats(long hits, long misses, long evictions, long size) {
+	public double hitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d misses=%d hitRate=%.1f%% evictions=%d size=%d", hits, misses, hitRate() * 100,
+				evictions, size);
+	}
+}
@@ -25,6 +25,32 @@ public final class Env {
         throw new IllegalStateException(key + " must be set");
     }
 
+    public String get(String key, String defaultValue) {
+        String fromEnv = System.getenv(key);
+        if (fromEnv != null && !fromEnv.isBlank()) {
+            return fromEnv.trim();
+        }
+
+        String fromFile = values.get(key);
+        if (fromFile != null && !fromFile.isBlank()) {
+            return fromFile.trim();
+        }
+
+        return defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(key + " must be an integer, got '" + value + "'", e);
+        }
+    }
+
     Map<String, String> asMap() {
         return Collections.unmodifiableMap(values);
     }
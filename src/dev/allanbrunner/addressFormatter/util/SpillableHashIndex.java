@@ -0,0 +1,244 @@
+package dev.allanbrunner.addressFormatter.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Concurrent map from 128-bit keys to non-negative {@code long} values, split into independently locked segments.
+ * Segments start as open-addressing tables on the heap; once a segment outgrows its share of
+ * {@code maxInMemoryEntries} it moves to a memory-mapped file in {@code spillDirectory}, where the page cache decides
+ * how much of it stays resident. Keys are expected to be well mixed hashes.
+ */
+public final class SpillableHashIndex implements AutoCloseable {
+	public static final long ABSENT = -1;
+
+	private static final int SEGMENT_BITS = 6;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final int SLOT_BYTES = 24;
+	private static final int MAX_FILE_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_BYTES);
+
+	private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+	private final long maxSegmentEntries;
+	private final Path spillDirectory;
+
+	public SpillableHashIndex(long maxInMemoryEntries, Path spillDirectory) {
+		if (maxInMemoryEntries <= 0) {
+			throw new IllegalArgumentException("maxInMemoryEntries must be positive");
+		}
+		this.maxSegmentEntries = Math.max(INITIAL_CAPACITY / 2, maxInMemoryEntries >> SEGMENT_BITS);
+		this.spillDirectory = spillDirectory;
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	public long get(long hi, long lo) {
+		Segment segment = segmentFor(hi);
+		synchronized (segment) {
+			return segment.table.get(hi, lo);
+		}
+	}
+
+	/** Stores {@code value} unless the key is present, and returns the present value or {@link #ABSENT}. */
+	public long putIfAbsent(long hi, long lo, long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("value must not be negative");
+		}
+		Segment segment = segmentFor(hi);
+		synchronized (segment) {
+			long existing = segment.table.get(hi, lo);
+			if (existing != ABSENT) {
+				return existing;
+			}
+			if (segment.size + 1 > segment.table.capacity() / 2) {
+				segment.grow();
+			}
+			segment.table.insert(hi, lo, value);
+			segment.size++;
+			return ABSENT;
+		}
+	}
+
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	public int spilledSegments() {
+		int spilled = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				if (segment.table instanceof FileTable) {
+					spilled++;
+				}
+			}
+		}
+		return spilled;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.table.release();
+				segment.table = new MemoryTable(1);
+				segment.size = 0;
+			}
+		}
+	}
+
+	private Segment segmentFor(long hi) {
+		return segments[(int) (hi >>> (64 - SEGMENT_BITS))];
+	}
+
+	private final class Segment {
+		Table table = new MemoryTable(INITIAL_CAPACITY);
+		long size;
+
+		void grow() {
+			int capacity = table.capacity() * 2;
+			Table grown;
+			if (table instanceof MemoryTable && size + 1 <= maxSegmentEntries) {
+				grown = new MemoryTable(capacity);
+			} else if (capacity <= MAX_FILE_CAPACITY) {
+				grown = new FileTable(capacity);
+			} else {
+				throw new IllegalStateException("Index segment is full at " + size + " entries");
+			}
+			table.copyTo(grown);
+			try {
+				table.release();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			table = grown;
+		}
+	}
+
+	/** Linear-probing table; a stored value of 0 marks a free slot, so values are kept off by one. */
+	private abstract static class Table {
+		abstract int capacity();
+
+		abstract long hi(int slot);
+
+		abstract long lo(int slot);
+
+		abstract long stored(int slot);
+
+		abstract void set(int slot, long hi, long lo, long stored);
+
+		void release() throws IOException {}
+
+		long get(long hi, long lo) {
+			int mask = capacity() - 1;
+			for (int slot = (int) lo & mask;; slot = (slot + 1) & mask) {
+				long stored = stored(slot);
+				if (stored == 0) {
+					return ABSENT;
+				}
+				if (hi(slot) == hi && lo(slot) == lo) {
+					return stored - 1;
+				}
+			}
+		}
+
+		void insert(long hi, long lo, long value) {
+			int mask = capacity() - 1;
+			int slot = (int) lo & mask;
+			while (stored(slot) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			set(slot, hi, lo, value + 1);
+		}
+
+		void copyTo(Table target) {
+			for (int slot = 0; slot < capacity(); slot++) {
+				long stored = stored(slot);
+				if (stored != 0) {
+					target.insert(hi(slot), lo(slot), stored - 1);
+				}
+			}
+		}
+	}
+
+	private static final class MemoryTable extends Table {
+		private final long[] slots;
+
+		MemoryTable(int capacity) {
+			this.slots = new long[capacity * 3];
+		}
+
+		@Override
+		int capacity() { return slots.length / 3; }
+
+		@Override
+		long hi(int slot) { return slots[slot * 3]; }
+
+		@Override
+		long lo(int slot) { return slots[slot * 3 + 1]; }
+
+		@Override
+		long stored(int slot) { return slots[slot * 3 + 2]; }
+
+		@Override
+		void set(int slot, long hi, long lo, long stored) {
+			slots[slot * 3] = hi;
+			slots[slot * 3 + 1] = lo;
+			slots[slot * 3 + 2] = stored;
+		}
+	}
+
+	private final class FileTable extends Table {
+		private final int capacity;
+		private final Path file;
+		private final MappedByteBuffer slots;
+
+		FileTable(int capacity) {
+			this.capacity = capacity;
+			try {
+				Files.createDirectories(spillDirectory);
+				this.file = Files.createTempFile(spillDirectory, "dedup-", ".idx");
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+					// A freshly extended file reads as zeros, which is an empty table
+					this.slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * SLOT_BYTES);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot spill index to " + spillDirectory, e);
+			}
+		}
+
+		@Override
+		int capacity() { return capacity; }
+
+		@Override
+		long hi(int slot) { return slots.getLong(slot * SLOT_BYTES); }
+
+		@Override
+		long lo(int slot) { return slots.getLong(slot * SLOT_BYTES + 8); }
+
+		@Override
+		long stored(int slot) { return slots.getLong(slot * SLOT_BYTES + 16); }
+
+		@Override
+		void set(int slot, long hi, long lo, long stored) {
+			slots.putLong(slot * SLOT_BYTES, hi);
+			slots.putLong(slot * SLOT_BYTES + 8, lo);
+			slots.putLong(slot * SLOT_BYTES + 16, stored);
+		}
+
+		@Override
+		void release() throws IOException {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package dev.allanbrunner.addressFormatter.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe pool of canonical string instances for low-cardinality values such as cities and countries. Once
+ * {@code maximumSize} distinct values are pooled, new values are returned as they are instead of being added, so a
+ * column that turns out to be high-cardinality cannot grow the pool without bound.
+ */
+public final class StringInterner {
+	private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+	private final int maximumSize;
+
+	public StringInterner(int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	public String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String canonical = pool.get(value);
+		if (canonical != null) {
+			return canonical;
+		}
+		if (pool.size() >= maximumSize) {
+			return value;
+		}
+		canonical = pool.putIfAbsent(value, value);
+		return canonical == null ? value : canonical;
+	}
+
+	public int size() { return pool.size(); }
+}